@@ -0,0 +1,62 @@
+package com.swiftkey.cornedbeef.benchmark;
+
+import com.swiftkey.cornedbeef.CoachMarkGeometry;
+import com.swiftkey.cornedbeef.MutableCoachMarkDimens;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmark for the scaling of an internal anchor to the size of its anchor
+ * view, which runs every time an internally anchored coach mark follows its anchor.
+ */
+@State(Scope.Thread)
+public class InternalAnchorBenchmark {
+
+    // Must be a power of 2
+    private static final int SAMPLES = 1024;
+
+    private final int[] mAnchorX = new int[SAMPLES];
+    private final int[] mAnchorY = new int[SAMPLES];
+    private final int[] mAnchorWidth = new int[SAMPLES];
+    private final int[] mAnchorHeight = new int[SAMPLES];
+    private final float[] mInternalX = new float[SAMPLES];
+    private final float[] mInternalY = new float[SAMPLES];
+    private final float[] mInternalWidth = new float[SAMPLES];
+    private final float[] mInternalHeight = new float[SAMPLES];
+    private final MutableCoachMarkDimens mOutAnchorDimens = new MutableCoachMarkDimens();
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            // Anchors from a single key up to a whole keyboard on a 1080x1920 screen
+            mAnchorWidth[i] = 96 + random.nextInt(1080 - 96);
+            mAnchorHeight[i] = 96 + random.nextInt(800);
+            mAnchorX[i] = random.nextInt(1080 - mAnchorWidth[i] + 1);
+            mAnchorY[i] = random.nextInt(1920 - mAnchorHeight[i] + 1);
+
+            // Sub-regions anywhere within the anchor, or the whole anchor
+            final boolean wholeAnchor = random.nextInt(4) == 0;
+            mInternalX[i] = wholeAnchor ? 0f : random.nextFloat() * 0.8f;
+            mInternalY[i] = wholeAnchor ? 0f : random.nextFloat() * 0.8f;
+            mInternalWidth[i] = wholeAnchor ? 1f : random.nextFloat() * (1f - mInternalX[i]);
+            mInternalHeight[i] = wholeAnchor ? 1f : random.nextFloat() * (1f - mInternalY[i]);
+        }
+    }
+
+    @Benchmark
+    public MutableCoachMarkDimens getInternalAnchorDimens() {
+        final int i = mIndex = (mIndex + 1) & (SAMPLES - 1);
+        CoachMarkGeometry.getInternalAnchorDimens(mAnchorX[i], mAnchorY[i],
+                mAnchorWidth[i], mAnchorHeight[i], mInternalX[i], mInternalY[i],
+                mInternalWidth[i], mInternalHeight[i], mOutAnchorDimens);
+        return mOutAnchorDimens;
+    }
+}
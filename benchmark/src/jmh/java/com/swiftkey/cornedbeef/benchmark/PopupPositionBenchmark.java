@@ -0,0 +1,109 @@
+package com.swiftkey.cornedbeef.benchmark;
+
+import com.swiftkey.cornedbeef.CoachMarkGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Benchmarks for the popup size and position calculations in {@link CoachMarkGeometry},
+ * which run every time a bubble coach mark follows its anchor.
+ *
+ * Each invocation uses the next of a fixed set of randomly generated but
+ * realistic screens, anchors and popups, so that the branches in the
+ * calculations are not perfectly predicted.
+ */
+@State(Scope.Thread)
+public class PopupPositionBenchmark {
+
+    // Must be a power of 2
+    private static final int SAMPLES = 1024;
+
+    // Common screen sizes in pixels, in portrait and landscape
+    private static final int[][] SCREENS = {
+            {480, 800}, {720, 1280}, {1080, 1920}, {1080, 2340}, {1440, 2960},
+            {800, 480}, {1280, 720}, {1920, 1080}, {2340, 1080}, {2960, 1440},
+    };
+
+    private static final int PADDING = 32;
+    private static final int MIN_WIDTH = 64;
+    private static final int ARROW_WIDTH = 40;
+
+    private final int[] mScreenWidth = new int[SAMPLES];
+    private final int[] mScreenHeight = new int[SAMPLES];
+    private final int[] mAnchorX = new int[SAMPLES];
+    private final int[] mAnchorY = new int[SAMPLES];
+    private final int[] mAnchorWidth = new int[SAMPLES];
+    private final int[] mAnchorHeight = new int[SAMPLES];
+    private final int[] mPopupWidth = new int[SAMPLES];
+    private final int[] mPopupHeight = new int[SAMPLES];
+    private final int[] mPopupX = new int[SAMPLES];
+    private final float[] mTarget = new float[SAMPLES];
+    private final boolean[] mShowBelow = new boolean[SAMPLES];
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            final int[] screen = SCREENS[random.nextInt(SCREENS.length)];
+            final int screenWidth = screen[0];
+            final int screenHeight = screen[1];
+
+            // Mostly icon or button sized anchors, with some full width bars
+            final int anchorWidth = random.nextInt(4) == 0
+                    ? screenWidth : 96 + random.nextInt(screenWidth / 3);
+            final int anchorHeight = 96 + random.nextInt(screenHeight / 8);
+            final int anchorX = random.nextInt(screenWidth - anchorWidth + 1);
+            final int anchorY = random.nextInt(screenHeight - anchorHeight + 1);
+            final int popupWidth = 2 * MIN_WIDTH + random.nextInt(screenWidth - 2 * MIN_WIDTH);
+
+            mScreenWidth[i] = screenWidth;
+            mScreenHeight[i] = screenHeight;
+            mAnchorX[i] = anchorX;
+            mAnchorY[i] = anchorY;
+            mAnchorWidth[i] = anchorWidth;
+            mAnchorHeight[i] = anchorHeight;
+            mPopupWidth[i] = popupWidth;
+            mPopupHeight[i] = 120 + random.nextInt(screenHeight / 4);
+            mPopupX[i] = CoachMarkGeometry.getPopupX(
+                    anchorX, anchorWidth, popupWidth, screenWidth, PADDING);
+            mTarget[i] = random.nextFloat();
+            mShowBelow[i] = random.nextBoolean();
+        }
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        return mIndex;
+    }
+
+    @Benchmark
+    public int getPopupWidth() {
+        final int i = next();
+        return CoachMarkGeometry.getPopupWidth(MIN_WIDTH, mScreenWidth[i] - 2 * PADDING,
+                mPopupWidth[i], mAnchorWidth[i], mTarget[i]);
+    }
+
+    @Benchmark
+    public void getPopupPosition(Blackhole blackhole) {
+        final int i = next();
+        blackhole.consume(CoachMarkGeometry.getPopupX(
+                mAnchorX[i], mAnchorWidth[i], mPopupWidth[i], mScreenWidth[i], PADDING));
+        blackhole.consume(CoachMarkGeometry.getPopupY(
+                mAnchorY[i], mAnchorHeight[i], mPopupHeight[i], mScreenHeight[i], mShowBelow[i]));
+    }
+
+    @Benchmark
+    public int getArrowLeftMargin() {
+        final int i = next();
+        return CoachMarkGeometry.getArrowLeftMargin(mTarget[i], mAnchorWidth[i], ARROW_WIDTH,
+                mAnchorX[i], mPopupX[i], 0, mPopupWidth[i] - ARROW_WIDTH);
+    }
+}
@@ -0,0 +1,174 @@
+package com.swiftkey.cornedbeef;
+
+/**
+ * Pure Java calculations for the size and position of coach marks, their
+ * pointy marks and punch holes. Nothing here depends on Android, allocates or
+ * returns anything but primitives and {@link MutableCoachMarkDimens}, so it is
+ * safe to call on every frame and can be tested and benchmarked on a plain JVM.
+ */
+public class CoachMarkGeometry {
+
+    /**
+     * The popup width is determined by the minimum width excluding content
+     * (usually the width of the pointy mark and padding), the maximum width
+     * (usually the width of the screen), a desired width (including content),
+     * the width of the anchor and the position along the anchor at which the
+     * pointy mark should point. Normally the popup takes the desired width or
+     * the maximum width, unless the target arrow would otherwise be positioned
+     * outside of the popup, in which case the popup is expanded to include the
+     * pointy mark.
+
+     * @param minWidth - the minimum width of the popup (not including content)
+     * @param maxWidth - the maximum width of the popup
+     * @param desiredWidth - the desired with of the popup (including content)
+     * @param anchorWidth - the width of the anchor view
+     * @param target - the position on the anchor at which the pointy mark should point
+     */
+    public static int getPopupWidth(int minWidth, int maxWidth,
+            int desiredWidth, int anchorWidth, float target) {
+        // Minimum width as a percentage of the anchor width
+        final double width = 2 * Math.abs(0.5 - target);
+
+        // Minimum width as an absolute value
+        int popupWidth = (int) (anchorWidth * width) + minWidth;
+
+        // Make sure not smaller than the minimum width
+        popupWidth = popupWidth > desiredWidth ? popupWidth : desiredWidth;
+
+        // Make sure not larger than the max width
+        return popupWidth > maxWidth ? maxWidth : popupWidth;
+    }
+
+    /**
+     * Calculate the x coordinate of the popup. The popup is centred on the
+     * anchor unless that would move it off-screen, in which case it is shifted
+     * left or right.
+     *
+     * @param anchorX - the x coordinate of the anchor view
+     * @param anchorWidth - the width of the anchor view
+     * @param popupWidth - the width of the popup
+     * @param screenWidth - the current screen width
+     * @param padding - minimum space between coach mark and screen edges
+     */
+    public static int getPopupX(final int anchorX, final int anchorWidth,
+            final int popupWidth, final int screenWidth, final int padding) {
+        final int popupX = (anchorWidth - popupWidth) / 2 + anchorX;
+
+        // Constrain popupX to the screen size (minus padding)
+        return popupX < padding ? padding :
+            (popupX + popupWidth > (screenWidth-padding) ?
+                    screenWidth - popupWidth - padding : popupX);
+    }
+
+    /**
+     * Calculate the y coordinate of the popup. If showBelow is false but there
+     * is not enough room above the anchor then the popup is positioned below
+     * it. If showBelow is true but there is not enough room below the anchor
+     * then the popup is positioned above it.
+     *
+     * @param anchorY - the y coordinate of the anchor view
+     * @param anchorHeight - the height of the anchor view
+     * @param popupHeight - the height of the popup
+     * @param screenHeight - the current screen height
+     * @param showBelow - true if the popup should appear below the anchor
+     */
+    public static int getPopupY(final int anchorY, final int anchorHeight,
+            final int popupHeight, final int screenHeight, final boolean showBelow) {
+        final int popupAboveY = anchorY - popupHeight;
+        final int popupBelowY = anchorY + anchorHeight;
+
+        if(showBelow) {
+            // If there is not enough room below move the popup above
+            return popupBelowY + popupHeight > screenHeight ? popupAboveY : popupBelowY;
+        } else {
+            // If there is not enough room above move the popup below
+            return popupAboveY < 0 ? popupBelowY : popupAboveY;
+        }
+    }
+
+    /**
+     * Calculate the size of the arrow's left margin
+     *
+     * @param target - the position on the anchor at which the arrow should point
+     * @param anchorWidth - the width of the anchor view
+     * @param arrowWidth - the width of the arrow
+     * @param anchorX - the x coordinate of the anchor view
+     * @param popupX - the x coordinate of the popup view
+     * @param minMargin - minimum accepted value of left margin
+     * @param maxMargin - maximum accepted value of left margin
+     */
+    public static int getArrowLeftMargin(float target, int anchorWidth,
+            int arrowWidth, int anchorX, int popupX, int minMargin, int maxMargin) {
+        int margin = (int) (target * anchorWidth) - (arrowWidth / 2) + anchorX - popupX;
+        return margin < minMargin ? minMargin : (margin > maxMargin ? maxMargin : margin);
+    }
+
+    /**
+     * Calculate the dimensions of an internal anchor, i.e. a sub-region of the
+     * anchor view given by values relative to its size
+     *
+     * @param anchorX - the x coordinate of the anchor view
+     * @param anchorY - the y coordinate of the anchor view
+     * @param anchorWidth - the width of the anchor view
+     * @param anchorHeight - the height of the anchor view
+     * @param internalX - the relative x coordinate of the internal anchor (between 0 and 1)
+     * @param internalY - the relative y coordinate of the internal anchor (between 0 and 1)
+     * @param internalWidth - the relative width of the internal anchor (between 0 and 1)
+     * @param internalHeight - the relative height of the internal anchor (between 0 and 1)
+     * @param outAnchorDimens - receives the dimensions of the internal anchor
+     */
+    public static void getInternalAnchorDimens(int anchorX, int anchorY,
+            int anchorWidth, int anchorHeight, float internalX, float internalY,
+            float internalWidth, float internalHeight, MutableCoachMarkDimens outAnchorDimens) {
+        outAnchorDimens.set(
+                (int) (anchorX + internalX * anchorWidth),
+                (int) (anchorY + internalY * anchorHeight),
+                (int) (anchorWidth * internalWidth),
+                (int) (anchorHeight * internalHeight));
+    }
+
+    /**
+     * Calculate the radius of a punch hole, which is big enough to surround
+     * the target view vertically with the given gap and padding
+     *
+     * @param targetHeight - the height of the target view
+     * @param gap - the total vertical space between the target view and the edge of the hole
+     * @param padding - extra space around the hole
+     */
+    public static float getPunchHoleRadius(int targetHeight, float gap, int padding) {
+        return Math.max(((targetHeight + gap) / 2) + padding, 0f);
+    }
+
+    /**
+     * Check whether content would best be shown below a punch hole, i.e. whether
+     * the hole is in the upper half of the view containing it
+     *
+     * @param holeCenterY - the y coordinate of the centre of the hole
+     * @param containerHeight - the height of the view containing the hole
+     */
+    public static boolean shouldShowContentBelowPunchHole(int holeCenterY, int containerHeight) {
+        return holeCenterY < containerHeight / 2;
+    }
+
+    /**
+     * Calculate the top padding needed to show content below a punch hole
+     *
+     * @param holeCenterY - the y coordinate of the centre of the hole
+     * @param holeRadius - the radius of the hole
+     */
+    public static int getPaddingBelowPunchHole(int holeCenterY, float holeRadius) {
+        return (int) (holeCenterY + holeRadius);
+    }
+
+    /**
+     * Calculate the bottom padding needed to show content above a punch hole
+     *
+     * @param holeCenterY - the y coordinate of the centre of the hole
+     * @param holeRadius - the radius of the hole
+     * @param containerHeight - the height of the view containing the hole
+     */
+    public static int getPaddingAbovePunchHole(int holeCenterY, float holeRadius,
+            int containerHeight) {
+        return containerHeight - (int) (holeCenterY - holeRadius);
+    }
+}
@@ -0,0 +1,64 @@
+package com.swiftkey.cornedbeef;
+
+/**
+ * A mutable, primitive holder for the position and size of an anchor or popup.
+ *
+ * Coach marks keep one instance of each and refill them every time they are
+ * repositioned, so that following a moving anchor does not allocate.
+ */
+public final class MutableCoachMarkDimens {
+    public int x;
+    public int y;
+    public int width;
+    public int height;
+
+    public MutableCoachMarkDimens() {
+    }
+
+    public MutableCoachMarkDimens(int x, int y, int width, int height) {
+        set(x, y, width, height);
+    }
+
+    /**
+     * Set all of the dimensions at once
+     */
+    public void set(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Copy the dimensions of another holder into this one
+     */
+    public void set(MutableCoachMarkDimens other) {
+        set(other.x, other.y, other.width, other.height);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MutableCoachMarkDimens)) {
+            return false;
+        }
+        final MutableCoachMarkDimens other = (MutableCoachMarkDimens) o;
+        return x == other.x && y == other.y && width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = x;
+        result = 31 * result + y;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MutableCoachMarkDimens(" + x + ", " + y + ", " + width + ", " + height + ")";
+    }
+}
@@ -0,0 +1,97 @@
+package com.swiftkey.cornedbeef;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoachMarkGeometryTestCase {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int PADDING = 20;
+    private static final boolean SHOW_BELOW = true;
+    private static final boolean SHOW_ABOVE = false;
+    private static final float DELTA = 0.0001f;
+
+    /**
+     * If the popup is narrower than the anchor, ensure that it is centred on the anchor
+     */
+    @Test
+    public void testGetPopupX_centredOnAnchor() {
+        final int popupX = CoachMarkGeometry.getPopupX(100, 300, 100, SCREEN_WIDTH, PADDING);
+
+        assertEquals(200, popupX);
+    }
+
+    /**
+     * If centring the popup would move it past either edge of the screen, ensure
+     * that it is shifted back on-screen, leaving the padding
+     */
+    @Test
+    public void testGetPopupX_clampedToScreen() {
+        final int leftX = CoachMarkGeometry.getPopupX(0, 100, 300, SCREEN_WIDTH, PADDING);
+        final int rightX = CoachMarkGeometry.getPopupX(
+                SCREEN_WIDTH - 100, 100, 300, SCREEN_WIDTH, PADDING);
+
+        assertEquals(PADDING, leftX);
+        assertEquals(SCREEN_WIDTH - 300 - PADDING, rightX);
+    }
+
+    /**
+     * If there is no room for the popup on the preferred side of the anchor,
+     * ensure that it flips to the other side
+     */
+    @Test
+    public void testGetPopupY_flipsWhenNoRoom() {
+        assertEquals(40, CoachMarkGeometry.getPopupY(30, 10, 50, SCREEN_HEIGHT, SHOW_ABOVE));
+        assertEquals(SCREEN_HEIGHT - 60, CoachMarkGeometry.getPopupY(
+                SCREEN_HEIGHT - 10, 10, 50, SCREEN_HEIGHT, SHOW_BELOW));
+    }
+
+    /**
+     * Ensure that the arrow margin is clamped to the given limits
+     */
+    @Test
+    public void testGetArrowLeftMargin_clamped() {
+        assertEquals(5, CoachMarkGeometry.getArrowLeftMargin(0f, 100, 10, 0, 0, 5, 50));
+        assertEquals(50, CoachMarkGeometry.getArrowLeftMargin(1f, 100, 10, 0, 0, 5, 50));
+        assertEquals(45, CoachMarkGeometry.getArrowLeftMargin(0.5f, 100, 10, 0, 0, 5, 50));
+    }
+
+    /**
+     * Ensure that the internal anchor is scaled to, and offset by, the anchor
+     */
+    @Test
+    public void testGetInternalAnchorDimens() {
+        final MutableCoachMarkDimens dimens = new MutableCoachMarkDimens();
+
+        CoachMarkGeometry.getInternalAnchorDimens(10, 40, 300, 200, 0.1f, 0.3f, 0.1f, 0.2f, dimens);
+
+        assertEquals(new MutableCoachMarkDimens(40, 100, 30, 40), dimens);
+    }
+
+    /**
+     * Ensure that the punch hole surrounds the target with the gap and padding,
+     * and is never negative
+     */
+    @Test
+    public void testGetPunchHoleRadius() {
+        assertEquals(65f, CoachMarkGeometry.getPunchHoleRadius(100, 10f, 10), DELTA);
+        assertEquals(0f, CoachMarkGeometry.getPunchHoleRadius(10, 0f, -20), DELTA);
+    }
+
+    /**
+     * Ensure that content goes below a hole in the upper half of the container,
+     * and is padded to clear the hole on whichever side it goes
+     */
+    @Test
+    public void testPunchHoleContentPadding() {
+        assertTrue(CoachMarkGeometry.shouldShowContentBelowPunchHole(100, 1000));
+        assertFalse(CoachMarkGeometry.shouldShowContentBelowPunchHole(600, 1000));
+
+        assertEquals(150, CoachMarkGeometry.getPaddingBelowPunchHole(100, 50f));
+        assertEquals(450, CoachMarkGeometry.getPaddingAbovePunchHole(600, 50f, 1000));
+    }
+}
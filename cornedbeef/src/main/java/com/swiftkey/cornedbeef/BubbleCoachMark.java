@@ -1,26 +1,20 @@
 package com.swiftkey.cornedbeef;
 
 import android.content.Context;
-import android.content.res.ColorStateList;
-import android.graphics.Point;
-import android.graphics.drawable.GradientDrawable;
-import android.os.Build;
-import android.util.Log;
-import android.view.LayoutInflater;
+import android.graphics.Rect;
 import android.view.View;
-import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
-import android.view.ViewGroup.MarginLayoutParams;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.PopupWindow;
 
 import androidx.annotation.ColorInt;
-import androidx.annotation.RequiresApi;
 
 /**
  * {@link BubbleCoachMark}s are displayed as speech bubble with a 'pointy mark'.
- * The speech bubble is implemented as an android {@link PopupWindow}. By
+ * The speech bubble is a {@link BubbleView}, which draws the bubble and its
+ * pointy mark with a {@link BubbleDrawable} shared with the other bubbles of
+ * the same color. A bubble is touchable, so it is shown in a window of its
+ * own even if it is hosted, unless it is embedded in a
+ * {@link CoachMarkFrameLayout}, which draws it along with its anchor. By
  * default the speech bubble is centred above the anchor view. If there is not
  * enough room above the anchor then the bubble will be moved below and the
  * direction of the pointy mark reversed. If the bubble would otherwise be
@@ -37,60 +31,45 @@ public class BubbleCoachMark extends InternallyAnchoredCoachMark {
 
     private final float mTarget;
     private final boolean mShowBelowAnchor;
-    private final int mMinArrowMargin;
+    @ColorInt private final int mBubbleColor;
 
+    private int mMinArrowMargin;
     private int mMinWidth;
     private int mArrowWidth;
-    private ImageView mTopArrow;
-    private ImageView mBottomArrow;
-    private ViewGroup mContentHolder;
+    private int mPopupHeight;
+    private BubbleView mBubbleView;
+    private BubbleDrawable mBackground;
 
     public BubbleCoachMark(BubbleCoachMarkBuilder builder) {
         super(builder);
         
         mTarget = builder.target;
         mShowBelowAnchor = builder.showBelowAnchor;
-        mMinArrowMargin = (int) mContext.getResources()
-                .getDimension(R.dimen.coach_mark_border_radius) + MIN_ARROW_MARGIN;
-
-        // Set the bubble color, if possible. We could change the color in lower APIs but we'd
-        // have to use the support library, increasing the size of the CornedBeef library.
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            try {
-                mTopArrow.setImageTintList(ColorStateList.valueOf(builder.bubbleColor));
-                mBottomArrow.setImageTintList(ColorStateList.valueOf(builder.bubbleColor));
-                ((GradientDrawable) mContentHolder.getBackground().mutate()).setColor(builder.bubbleColor);
-            } catch (Exception e) {
-                Log.e("BubbleCoachMark", "Could not change the coach mark color");
-            }
-        }
+        mMinArrowMargin = (int) mStyle.getBorderRadius() + MIN_ARROW_MARGIN;
+        mBubbleColor = builder.bubbleColor;
     }
     
     @Override
     protected View createContentView(View content) {
-        // Inflate the coach mark layout and add the content
-        View view = LayoutInflater.from(mContext).inflate(R.layout.bubble_coach_mark, null);
-        mContentHolder = view.findViewById(R.id.coach_mark_content);
-        mContentHolder.addView(content);
+        // Inflate the coach mark layout and add the content. The bubble and
+        // its pointy mark are drawn by the bubble view's background, which
+        // shares its state with other bubbles of the same color.
+        mBubbleView = (BubbleView) inflateCoachMarkLayout(R.layout.bubble_coach_mark);
+        mBackground = mStyle.getBubbleBackground(mBubbleColor);
+        mArrowWidth = mBackground.getArrowWidth();
+        mBubbleView.setBubble(mBackground);
+        mBubbleView.addView(content);
         
         // Measure the coach mark to get the minimum width (constrained by screen width and padding) 
-        final int maxWidth = mContext.getResources()
-                .getDisplayMetrics().widthPixels - 2 * mPadding;
-        view.measure(View.MeasureSpec.makeMeasureSpec(maxWidth, View.MeasureSpec.AT_MOST), 0);
-        
-        mMinWidth = view.getMeasuredWidth();
-        mTopArrow = view.findViewById(R.id.top_arrow);
-        mBottomArrow = view.findViewById(R.id.bottom_arrow);
-
-        // Ensure that content holder expands to fill the coach mark
-        mContentHolder.setLayoutParams(new LinearLayout.LayoutParams(
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT,
-                android.view.ViewGroup.LayoutParams.WRAP_CONTENT));
-
-        // It is assumed that the top and bottom arrows are identical
-        mArrowWidth = mBottomArrow.getMeasuredWidth();
+        final int maxWidth = mStyle.getDisplayWidth() - 2 * mPadding;
+        final long measureStart = mMetrics != null ? System.nanoTime() : 0;
+        mBubbleView.measure(View.MeasureSpec.makeMeasureSpec(maxWidth, View.MeasureSpec.AT_MOST), 0);
+        if (mMetrics != null) {
+            mMetrics.addMeasureTime(System.nanoTime() - measureStart);
+        }
+        mMinWidth = mBubbleView.getMeasuredWidth();
 
-        return view;
+        return mBubbleView;
     }
     
     @Override
@@ -101,54 +80,80 @@ public class BubbleCoachMark extends InternallyAnchoredCoachMark {
                 LayoutParams.WRAP_CONTENT);
         
         popup.setClippingEnabled(false); // We will handle clipping ourselves
-        popup.setTouchInterceptor(new CoachMarkOnTouchListener());
-        popup.setTouchable(true);
         return popup;
     }
-    
+
+    @Override
+    protected View.OnTouchListener createTouchInterceptor() {
+        return new CoachMarkOnTouchListener();
+    }
+
     @Override
-    protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
+    protected void onRecycle() {
+        mBubbleView.removeAllViews();
+    }
+
+    /**
+     * The width of the bubble is limited by the width of the display frame,
+     * so its minimum width is measured again for the new frame, with the
+     * padding and arrow margin of the current style
+     */
+    @Override
+    protected void onDisplayFrameChanged(Rect displayFrame) {
+        // The style may have changed with the configuration
+        mMinArrowMargin = (int) mStyle.getBorderRadius() + MIN_ARROW_MARGIN;
+        mBubbleView.measure(View.MeasureSpec.makeMeasureSpec(
+                displayFrame.width() - 2 * mPadding, View.MeasureSpec.AT_MOST), 0);
+        mMinWidth = mBubbleView.getMeasuredWidth();
+        // Measure it again at the size of the popup
+        mBubbleView.requestLayout();
+    }
+
+    @Override
+    protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+            MutableCoachMarkDimens outPopupDimens) {
         final int screenWidth = mDisplayFrame.width();
         final int screenHeight = mDisplayFrame.height();
         
-        final int popupWidth = CoachMarkUtils.getPopupWidth(mArrowWidth, 
+        final int popupWidth = CoachMarkGeometry.getPopupWidth(mArrowWidth, 
                 screenWidth, mMinWidth, anchorDimens.width, mTarget);
         
-        final int popupHeight = getContentView().getMeasuredHeight();
+        // The bubble may have been measured at its current height, e.g. in a
+        // coach mark layer, so use the height it needs rather than that
+        final int popupHeight = mBubbleView.getDesiredHeight();
+        mPopupHeight = popupHeight;
         
-        final Point popupPos = CoachMarkUtils.getPopupPosition(anchorDimens, popupWidth, 
-                popupHeight, screenWidth, screenHeight, mPadding, mShowBelowAnchor);
+        final int popupX = CoachMarkGeometry.getPopupX(anchorDimens.x, anchorDimens.width,
+                popupWidth, screenWidth, mPadding);
+        final int popupY = CoachMarkGeometry.getPopupY(anchorDimens.y, anchorDimens.height,
+                popupHeight, screenHeight, mShowBelowAnchor);
         
-        return new CoachMarkDimens<Integer>(popupPos.x, popupPos.y, popupWidth, popupHeight);
+        outPopupDimens.set(popupX, popupY, popupWidth, popupHeight);
     }
     
+    /**
+     * The popup is sized to fit its content, so it has to be updated if the
+     * content is resized even though the anchor has not moved
+     */
     @Override
-    protected void updateView(CoachMarkDimens<Integer> popupDimens, CoachMarkDimens<Integer> anchorDimens) {
-        int leftMargin;
-        final View currentArrow;
-        final MarginLayoutParams params; 
-        
+    protected boolean isViewDirty() {
+        return mBubbleView.getDesiredHeight() != mPopupHeight;
+    }
+
+    @Override
+    protected void updateView(MutableCoachMarkDimens popupDimens,
+            MutableCoachMarkDimens anchorDimens) {
         // Check if the popup is being shown above or below the anchor
-        if(popupDimens.getPos().y > anchorDimens.y) {
-            currentArrow = mTopArrow;
-            mTopArrow.setVisibility(View.VISIBLE);
-            mBottomArrow.setVisibility(View.GONE);
-        } else {
-            currentArrow = mBottomArrow;
-            mBottomArrow.setVisibility(View.VISIBLE);
-            mTopArrow.setVisibility(View.GONE);
-        }
-        
-        leftMargin = CoachMarkUtils.getArrowLeftMargin(mTarget,
+        final boolean pointingUp = popupDimens.y > anchorDimens.y;
+
+        final int leftMargin = CoachMarkGeometry.getArrowLeftMargin(mTarget,
                 anchorDimens.width, mArrowWidth, anchorDimens.x,
-                popupDimens.getPos().x, mMinArrowMargin, 
+                popupDimens.x, mMinArrowMargin, 
                 popupDimens.width - mMinArrowMargin - mArrowWidth);
 
-        params = (MarginLayoutParams) currentArrow.getLayoutParams();
-        if(leftMargin != params.leftMargin) {
-            params.leftMargin = leftMargin;
-            currentArrow.setLayoutParams(params);
-        }        
+        // Moving the pointy mark only redraws the background, and flipping it
+        // also moves the content, but neither changes the size of the bubble
+        mBubbleView.setArrow(pointingUp, leftMargin);
     }
     
     public static class BubbleCoachMarkBuilder extends InternallyAnchoredCoachMarkBuilder {
@@ -160,17 +165,17 @@ public class BubbleCoachMark extends InternallyAnchoredCoachMark {
         
         public BubbleCoachMarkBuilder(Context context, View anchor, String message) {
             super(context, anchor, message);
-            bubbleColor = CoachMarkUtils.resolveColor(context, R.color.default_colour);
+            bubbleColor = CoachMarkStyle.getInstance(context).getDefaultColor();
         }
 
         public BubbleCoachMarkBuilder(Context context, View anchor, View content) {
             super(context, anchor, content);
-            bubbleColor = CoachMarkUtils.resolveColor(context, R.color.default_colour);
+            bubbleColor = CoachMarkStyle.getInstance(context).getDefaultColor();
         }
 
         public BubbleCoachMarkBuilder(Context context, View anchor, int contentResId) {
             super(context, anchor, contentResId);
-            bubbleColor = CoachMarkUtils.resolveColor(context, R.color.default_colour);
+            bubbleColor = CoachMarkStyle.getInstance(context).getDefaultColor();
         }
         
         /**
@@ -198,12 +203,10 @@ public class BubbleCoachMark extends InternallyAnchoredCoachMark {
 
         /**
          * Set the coach mark's bubble color.
-         * It has no effect if called from APIs lower than Lollipop (21).
          *
          * @param bubbleColor
          *      new bubble color
          */
-        @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
         public BubbleCoachMarkBuilder setBubbleColor(@ColorInt int bubbleColor) {
             this.bubbleColor = bubbleColor;
             return this;
@@ -0,0 +1,214 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.ColorInt;
+
+/**
+ * The background of a {@link BubbleCoachMark}: a rounded rectangle with a
+ * 'pointy mark' above or below it.
+ *
+ * Space for the pointy mark is left only on the side of the bounds which it
+ * is shown on, and the view using this background is expected to leave the
+ * same space beside its content (see {@link BubbleView}). Moving the pointy
+ * mark only needs the bubble to be drawn again. Flipping it to the other side
+ * of the bubble moves the bubble within the bounds, so the content has to be
+ * moved with it, but the size of the bounds stays the same.
+ *
+ * Bubbles of the same color share a {@link Drawable.ConstantState}, which holds
+ * the pointy mark's paths.
+ */
+public class BubbleDrawable extends Drawable {
+
+    private final BubbleState mState;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mBubbleRect = new RectF();
+
+    private boolean mArrowPointingUp;
+    private int mArrowLeft;
+
+    /**
+     * Create a bubble background
+     *
+     * @param color the color of the bubble
+     * @param cornerRadius the radius of the bubble's corners in pixels
+     * @param arrowWidth the width of the pointy mark in pixels
+     * @param arrowHeight the height of the pointy mark in pixels, which is
+     *                    left at the top or the bottom of the bounds
+     */
+    public BubbleDrawable(@ColorInt int color, float cornerRadius, int arrowWidth, int arrowHeight) {
+        this(new BubbleState(color, cornerRadius, arrowWidth, arrowHeight));
+    }
+
+    private BubbleDrawable(BubbleState state) {
+        mState = state;
+        mPaint.setColor(state.mColor);
+    }
+
+    /**
+     * Move the pointy mark. The bubble is only redrawn if the pointy mark has moved.
+     *
+     * @param pointingUp true to show the pointy mark above the bubble, false
+     *                   to show it below
+     * @param left the distance from the left of the bounds to the left of the
+     *             pointy mark
+     */
+    public void setArrow(boolean pointingUp, int left) {
+        if (pointingUp != mArrowPointingUp || left != mArrowLeft) {
+            final boolean flipped = pointingUp != mArrowPointingUp;
+            mArrowPointingUp = pointingUp;
+            mArrowLeft = left;
+            if (flipped) {
+                updateBubbleRect(getBounds());
+            }
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Whether the pointy mark is shown above the bubble, rather than below it
+     */
+    public boolean isArrowPointingUp() {
+        return mArrowPointingUp;
+    }
+
+    /**
+     * The distance from the left of the bounds to the left of the pointy mark
+     */
+    public int getArrowLeft() {
+        return mArrowLeft;
+    }
+
+    public int getArrowWidth() {
+        return mState.mArrowWidth;
+    }
+
+    public int getArrowHeight() {
+        return mState.mArrowHeight;
+    }
+
+    @ColorInt
+    public int getColor() {
+        return mState.mColor;
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        updateBubbleRect(bounds);
+    }
+
+    /**
+     * Fit the bubble into the bounds, leaving space for the pointy mark on its side
+     */
+    private void updateBubbleRect(Rect bounds) {
+        if (mArrowPointingUp) {
+            mBubbleRect.set(bounds.left, bounds.top + mState.mArrowHeight,
+                    bounds.right, bounds.bottom);
+        } else {
+            mBubbleRect.set(bounds.left, bounds.top,
+                    bounds.right, bounds.bottom - mState.mArrowHeight);
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final float radius = mState.mCornerRadius;
+        canvas.drawRoundRect(mBubbleRect, radius, radius, mPaint);
+
+        final Rect bounds = getBounds();
+        final int saveCount = canvas.save();
+        if (mArrowPointingUp) {
+            canvas.translate(bounds.left + mArrowLeft, bounds.top);
+            canvas.drawPath(mState.mUpArrow, mPaint);
+        } else {
+            canvas.translate(bounds.left + mArrowLeft, mBubbleRect.bottom);
+            canvas.drawPath(mState.mDownArrow, mPaint);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (alpha != mPaint.getAlpha()) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    /**
+     * The state shared by every bubble of the same color and size. It is never
+     * changed, so there is nothing to copy when a bubble is mutated.
+     */
+    static final class BubbleState extends ConstantState {
+
+        @ColorInt final int mColor;
+        final float mCornerRadius;
+        final int mArrowWidth;
+        final int mArrowHeight;
+        // The pointy marks, with their top left corners at the origin. Each
+        // overlaps the bubble by a pixel so that no seam is drawn between them.
+        final Path mUpArrow = new Path();
+        final Path mDownArrow = new Path();
+
+        BubbleState(@ColorInt int color, float cornerRadius, int arrowWidth, int arrowHeight) {
+            mColor = color;
+            mCornerRadius = cornerRadius;
+            mArrowWidth = arrowWidth;
+            mArrowHeight = arrowHeight;
+
+            mUpArrow.moveTo(0, arrowHeight + 1);
+            mUpArrow.lineTo(arrowWidth / 2f, 0);
+            mUpArrow.lineTo(arrowWidth, arrowHeight + 1);
+            mUpArrow.close();
+
+            mDownArrow.moveTo(0, -1);
+            mDownArrow.lineTo(arrowWidth / 2f, arrowHeight);
+            mDownArrow.lineTo(arrowWidth, -1);
+            mDownArrow.close();
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new BubbleDrawable(this);
+        }
+
+        @Override
+        public Drawable newDrawable(Resources res) {
+            return new BubbleDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The view of a {@link BubbleCoachMark}: a single view which draws the bubble
+ * and its pointy mark with a {@link BubbleDrawable}, and lays out the content
+ * of the coach mark inside the bubble.
+ *
+ * The content is placed at the top left of the bubble, inside the view's
+ * padding. Space for the pointy mark is left outside the padding, on the side
+ * of the bubble which the pointy mark is shown on.
+ *
+ * The content is always measured at its own height, so that the height the
+ * bubble needs is known even when the bubble has been given a fixed height,
+ * e.g. by a {@link CoachMarkLayer}.
+ */
+public class BubbleView extends ViewGroup {
+
+    private static final int UNSPECIFIED_MEASURE_SPEC =
+            MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+
+    private BubbleDrawable mBubble;
+    private int mArrowHeight;
+    private int mDesiredHeight;
+
+    public BubbleView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Set the bubble to draw behind the content
+     */
+    @SuppressWarnings("deprecation")
+    public void setBubble(BubbleDrawable bubble) {
+        mBubble = bubble;
+        setBackgroundDrawable(bubble);
+        if (bubble.getArrowHeight() != mArrowHeight) {
+            mArrowHeight = bubble.getArrowHeight();
+            requestLayout();
+        }
+    }
+
+    public BubbleDrawable getBubble() {
+        return mBubble;
+    }
+
+    /**
+     * Move the pointy mark. Flipping it to the other side of the bubble moves
+     * the content to the other side of it, without changing the size of the view.
+     *
+     * @see BubbleDrawable#setArrow(boolean, int)
+     */
+    public void setArrow(boolean pointingUp, int left) {
+        final boolean flipped = pointingUp != isArrowPointingUp();
+        mBubble.setArrow(pointingUp, left);
+        if (flipped && getChildCount() > 0) {
+            getChildAt(0).offsetTopAndBottom(pointingUp ? mArrowHeight : -mArrowHeight);
+            invalidate();
+        }
+    }
+
+    private boolean isArrowPointingUp() {
+        return mBubble != null && mBubble.isArrowPointingUp();
+    }
+
+    /**
+     * The height which the bubble needs to fit its content, as of the last
+     * measure, whatever height it was measured at
+     */
+    public int getDesiredHeight() {
+        return mDesiredHeight;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        final int verticalPadding = getPaddingTop() + getPaddingBottom() + mArrowHeight;
+
+        int contentWidth = 0;
+        int contentHeight = 0;
+        int childState = 0;
+        if (getChildCount() > 0) {
+            final View content = getChildAt(0);
+            if (content.getVisibility() != View.GONE) {
+                final LayoutParams params = content.getLayoutParams();
+                final int horizontalMargins = getLeftMargin(params) + getRightMargin(params);
+                final int verticalMargins = getTopMargin(params) + getBottomMargin(params);
+                content.measure(
+                        getChildMeasureSpec(widthMeasureSpec,
+                                horizontalPadding + horizontalMargins, params.width),
+                        getChildMeasureSpec(UNSPECIFIED_MEASURE_SPEC,
+                                verticalPadding + verticalMargins, params.height));
+                contentWidth = content.getMeasuredWidth() + horizontalMargins;
+                contentHeight = content.getMeasuredHeight() + verticalMargins;
+                childState = content.getMeasuredState();
+            }
+        }
+
+        mDesiredHeight = Math.max(contentHeight + verticalPadding, getSuggestedMinimumHeight());
+        setMeasuredDimension(
+                resolveSizeAndState(Math.max(contentWidth + horizontalPadding,
+                        getSuggestedMinimumWidth()), widthMeasureSpec, childState),
+                resolveSizeAndState(mDesiredHeight, heightMeasureSpec,
+                        childState << MEASURED_HEIGHT_STATE_SHIFT));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (getChildCount() == 0) {
+            return;
+        }
+        final View content = getChildAt(0);
+        if (content.getVisibility() == View.GONE) {
+            return;
+        }
+        final LayoutParams params = content.getLayoutParams();
+        final int left = getPaddingLeft() + getLeftMargin(params);
+        final int top = getPaddingTop() + (isArrowPointingUp() ? mArrowHeight : 0)
+                + getTopMargin(params);
+        content.layout(left, top,
+                left + content.getMeasuredWidth(), top + content.getMeasuredHeight());
+    }
+
+    // The content's layout params may have been replaced with ones without margins
+    private static int getLeftMargin(LayoutParams params) {
+        return params instanceof MarginLayoutParams ? ((MarginLayoutParams) params).leftMargin : 0;
+    }
+
+    private static int getTopMargin(LayoutParams params) {
+        return params instanceof MarginLayoutParams ? ((MarginLayoutParams) params).topMargin : 0;
+    }
+
+    private static int getRightMargin(LayoutParams params) {
+        return params instanceof MarginLayoutParams ? ((MarginLayoutParams) params).rightMargin : 0;
+    }
+
+    private static int getBottomMargin(LayoutParams params) {
+        return params instanceof MarginLayoutParams ? ((MarginLayoutParams) params).bottomMargin : 0;
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(LayoutParams params) {
+        return params instanceof MarginLayoutParams
+                ? new MarginLayoutParams((MarginLayoutParams) params)
+                : new MarginLayoutParams(params);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(LayoutParams params) {
+        return params instanceof MarginLayoutParams;
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+}
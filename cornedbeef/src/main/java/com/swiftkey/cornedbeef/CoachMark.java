@@ -1,18 +1,26 @@
 package com.swiftkey.cornedbeef;
 
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Color;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
-import android.util.TypedValue;
+import android.os.Build;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnAttachStateChangeListener;
+import android.view.View.OnLayoutChangeListener;
 import android.view.View.OnTouchListener;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnGlobalLayoutListener;
 import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.view.ViewTreeObserver.OnScrollChangedListener;
 import android.widget.PopupWindow;
 import android.widget.TextView;
 
@@ -23,6 +31,7 @@ import androidx.annotation.StyleRes;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 
 /**
  * A CoachMark is a temporary popup that can be positioned above a {@link View}
@@ -50,6 +59,24 @@ public abstract class CoachMark {
 
     public static final int NO_ANIMATION = 0;
 
+    @IntDef({TRACK_ANCHOR_EVERY_FRAME, TRACK_ANCHOR_ON_CHANGE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface AnchorTrackingMode {}
+
+    /**
+     * Check the position of the anchor before every frame that is drawn in its
+     * window. This picks up any kind of movement, including animations, but
+     * costs some work on every frame while the coach mark is showing.
+     */
+    public static final int TRACK_ANCHOR_EVERY_FRAME = 0;
+    /**
+     * Only reposition the coach mark when the anchor or one of its ancestors is
+     * laid out, or when a view in the anchor's window scrolls. Frames where
+     * unrelated content is redrawn cost nothing, but movement which does not
+     * cause a layout or scroll (e.g. animating translationX) is not followed.
+     */
+    public static final int TRACK_ANCHOR_ON_CHANGE = 1;
+
     /**
      * Interface used to allow the creator of a coach mark to run some code when the
      * coach mark is dismissed.
@@ -72,6 +99,18 @@ public abstract class CoachMark {
         void onShow();
     }
 
+    /**
+     * Interface used to allow the creator of a coach mark to receive a coach mark
+     * which was built in the background.
+     */
+    public interface OnPreparedListener {
+        /**
+         * This method will be invoked on the main thread when the coach mark has
+         * been built and is ready to be shown.
+         */
+        void onPrepared(CoachMark coachMark);
+    }
+
     /**
      * Interface used to allow the creator of a coach mark to run some code when the
      * coach mark's given timeout is expired.
@@ -83,23 +122,92 @@ public abstract class CoachMark {
         void onTimeout();
     }
     
-    protected final PopupWindow mPopup;
+    /**
+     * The coach mark's window, which is null until the coach mark is shown in a
+     * window of its own, and stays null if it is hosted or embedded
+     */
+    protected PopupWindow mPopup;
     protected final Context mContext;
     protected final View mTokenView;
     protected final View mAnchor;
-    protected final int mPadding;
+    /**
+     * The left and right padding in pixels, which is converted again from
+     * {@link #mPaddingDip} if the style changes with the display frame
+     */
+    protected int mPadding;
+    private final int mPaddingDip;
+    /**
+     * The resolved CornedBeef resources, which are read again if the display
+     * frame changes along with the configuration
+     */
+    protected CoachMarkStyle mStyle;
+    /**
+     * Performance counters for this coach mark, or null if metrics are not being collected
+     */
+    protected final CoachMarkMetrics mMetrics;
 
+    private final int mAnchorTrackingMode;
+    private final int mRepositionFrameInterval;
+    private final CoachMarkRepositionScheduler mRepositionScheduler;
     private final OnPreDrawListener mPreDrawListener;
+    private final CoachMarkAnchorChangeListener mAnchorChangeListener;
+    private final CoachMarkDisplayFrameListener mDisplayFrameListener;
+    private final ArrayList<View> mTrackedAncestors = new ArrayList<>();
     private final OnDismissListener mDismissListener;
     private final OnShowListener mShowListener;
     private final OnAttachStateChangeListener mOnAttachStateChangeListener;
     private final OnTimeoutListener mTimeoutListener;
     private final long mTimeoutInMs;
     private final boolean mShouldDismissOnAnchorDetach;
+    private final CoachMarkMetrics.Listener mMetricsListener;
+    private final boolean mPooled;
+    private final boolean mHosted;
+    private final int mAnimationStyle;
+
+    // What to create the content view from, when the coach mark is prepared
+    private final View mContent;
+    private final String mMessage;
+    @LayoutRes private final int mContentResId;
+    private final boolean mHasTextColor;
+    @ColorInt private final int mTextColor;
+
+    private final MutableCoachMarkDimens mAnchorDimens = new MutableCoachMarkDimens();
+    private final MutableCoachMarkDimens mPopupDimens = new MutableCoachMarkDimens();
+    private final MutableCoachMarkDimens mLastAnchorDimens = new MutableCoachMarkDimens();
+    private final MutableCoachMarkDimens mLastPopupDimens = new MutableCoachMarkDimens();
+    private final MutableCoachMarkDimens mScreenDimens = new MutableCoachMarkDimens();
+    private final int[] mPopupOrigin = new int[2];
+    private final Rect mNewDisplayFrame = new Rect();
 
     private Runnable mTimeoutDismissRunnable;
+    private long mLastRepositionFrame;
+
+    // Whether the coach mark is waiting to be repositioned, which is only
+    // used by the CoachMarkRepositionScheduler
+    boolean mRepositionScheduled;
+
+    // The coach mark view, which may be created before the rest of the coach mark
+    private View mContentView;
+    private boolean mPrepared;
+    private boolean mTouchable;
 
-    protected Rect mDisplayFrame;
+    // The layout and window taken from the pool while the content view is created
+    @LayoutRes private int mLayoutRes;
+    private PopupWindow mRecycledPopup;
+    private boolean mRecycled;
+    private boolean mFocusable;
+    private OnTouchListener mTouchInterceptor;
+
+    // The layer which this coach mark is shown in, if it is showing without a window of its own
+    private CoachMarkLayer mLayer;
+    private boolean mEmbedded;
+    private boolean mDisplayFrameChanged;
+
+    /**
+     * The visible display frame of the anchor's window, which is kept up to
+     * date while the coach mark is showing
+     */
+    protected final Rect mDisplayFrame = new Rect();
     
     protected CoachMark(CoachMarkBuilder builder) {
         mAnchor = builder.anchor;
@@ -109,25 +217,120 @@ public abstract class CoachMark {
         mShowListener = builder.showListener;
         mTimeoutListener = builder.timeoutListener;
         mTokenView = builder.tokenView != null ? builder.tokenView : mAnchor;
-        mPadding = (int) TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP, builder.padding, 
-                mContext.getResources().getDisplayMetrics());
+        mStyle = CoachMarkStyle.getInstance(mContext);
+        mPaddingDip = builder.padding;
+        mPadding = mStyle.dipToPixels(mPaddingDip);
         mShouldDismissOnAnchorDetach = builder.shouldDismissOnAnchorDetach;
-
-        // Create the coach mark view
-        View view = createContentView(builder.content);
-        
-        // Create and initialise the PopupWindow
-        mPopup = createNewPopupWindow(view);
-        
-        mPopup.setAnimationStyle(builder.animationStyle);
-        mPopup.setInputMethodMode(PopupWindow.INPUT_METHOD_NOT_NEEDED);
-        mPopup.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+        mAnchorTrackingMode = builder.anchorTrackingMode;
+        mRepositionFrameInterval = builder.repositionFrameInterval;
+        mRepositionScheduler = CoachMarkRepositionScheduler.getInstance();
+        mMetricsListener = builder.metricsListener;
+        mPooled = builder.pooled;
+        mHosted = builder.hosted;
+        mMetrics = mMetricsListener != null || CoachMarkStats.isEnabled()
+                ? new CoachMarkMetrics(getClass().getSimpleName()) : null;
+        mAnimationStyle = builder.animationStyle;
+        mContent = builder.content;
+        mMessage = builder.message;
+        mContentResId = builder.contentResId;
+        mHasTextColor = builder.hasTextColor;
+        mTextColor = builder.textColor;
 
         mPreDrawListener = new CoachMarkPreDrawListener();
+        mAnchorChangeListener = new CoachMarkAnchorChangeListener();
+        mDisplayFrameListener = new CoachMarkDisplayFrameListener();
         mOnAttachStateChangeListener = new CoachMarkOnAttachStateChangeListener();
     }
     
+    /**
+     * Create the views of the coach mark, if they have not been created
+     * already. This is done by {@link #show()}, so it only needs to be called
+     * to do the work ahead of time. This must be called on the main thread,
+     * but the views can be created in the background first (see
+     * {@link CoachMarkBuilder#buildAsync(OnPreparedListener)}). The window is
+     * only created when the coach mark is shown, if it needs one.
+     */
+    public void prepare() {
+        if (mPrepared) {
+            return;
+        }
+        prepareContentView();
+        mTouchable = isTouchable();
+        mTouchInterceptor = createTouchInterceptor();
+        mPrepared = true;
+    }
+
+    /**
+     * Create the coach mark's view, if it has not been created already. Unlike
+     * the rest of the coach mark, this may be done on a background thread.
+     */
+    View prepareContentView() {
+        if (mContentView == null) {
+            final long createStart = mMetrics != null ? System.nanoTime() : 0;
+            mContentView = createContentView(createContent());
+            if (mMetrics != null) {
+                // Subclasses record any measuring they do separately
+                mMetrics.addInflateTime(
+                        System.nanoTime() - createStart - mMetrics.getMeasureTimeNanos());
+            }
+        }
+        return mContentView;
+    }
+
+    /**
+     * Create the coach mark's window, if it has not been created already. This
+     * is only needed by coach marks which are shown in a window of their own.
+     */
+    void preparePopupWindow() {
+        if (mPopup != null) {
+            return;
+        }
+        prepare();
+
+        // Create and initialise the PopupWindow, unless one was recycled along with the view
+        final PopupWindow recycledPopup = mRecycledPopup;
+        mRecycledPopup = null;
+        final PopupWindow popup = recycledPopup != null
+                ? recycledPopup : createNewPopupWindow(mContentView);
+        if (recycledPopup != null) {
+            reusePopupWindow(popup);
+        }
+
+        popup.setAnimationStyle(mAnimationStyle);
+        popup.setInputMethodMode(PopupWindow.INPUT_METHOD_NOT_NEEDED);
+        popup.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+        popup.setTouchable(mTouchable);
+        popup.setFocusable(mFocusable);
+        popup.setTouchInterceptor(mTouchInterceptor);
+        mPopup = popup;
+    }
+
+    /**
+     * Create the content which the builder was given
+     */
+    private View createContent() {
+        if (mContent != null) {
+            return mContent;
+        }
+
+        if (mContentResId == 0) {
+            final TextView textView = new TextView(mContext);
+            textView.setTextColor(mTextColor);
+            textView.setText(mMessage);
+            return textView;
+        }
+
+        final View content = LayoutInflater.from(mContext).inflate(mContentResId, null);
+        if (mHasTextColor) {
+            if (!(content instanceof TextView)) {
+                throw new IllegalStateException(
+                        "Can't set a text color in a CoachMark whose content is not a TextView");
+            }
+            ((TextView) content).setTextColor(mTextColor);
+        }
+        return content;
+    }
+
     /**
      * Create the coach mark view
      */
@@ -138,38 +341,145 @@ public abstract class CoachMark {
      */
     protected abstract PopupWindow createNewPopupWindow(View contentView);
     
+    /**
+     * Whether the coach mark takes touches, rather than letting them through
+     * to the views underneath it
+     */
+    protected boolean isTouchable() {
+        return true;
+    }
+
+    /**
+     * Create a listener which sees the coach mark's touch events before its
+     * view does, e.g. to dismiss the coach mark when it is touched
+     *
+     * @return the touch interceptor, or null if the coach mark's touches should
+     *      simply be dispatched to its view
+     */
+    protected OnTouchListener createTouchInterceptor() {
+        return null;
+    }
+
+    /**
+     * Reinitialise a {@link PopupWindow} which was created by
+     * {@link #createNewPopupWindow(View)} for a previous coach mark of the same
+     * type and then recycled by the {@link CoachMarkPool}. Anything which refers
+     * to the previous coach mark, such as a touch interceptor, must be replaced.
+     */
+    protected void reusePopupWindow(PopupWindow popup) {
+    }
+
+    /**
+     * Reset the coach mark's view before it is returned to the {@link CoachMarkPool},
+     * so that it can be passed to {@link #createContentView(View)} again for a new
+     * coach mark. At least the content which was added to it should be removed.
+     */
+    protected void onRecycle() {
+    }
+
+    /**
+     * Inflate one of the coach mark layouts. Subclasses should use this from
+     * {@link #createContentView(View)}, so that pooled coach marks can reuse a
+     * view (and its window) recycled by the {@link CoachMarkPool} instead.
+     *
+     * @param layoutRes the coach mark layout
+     */
+    protected View inflateCoachMarkLayout(@LayoutRes int layoutRes) {
+        mLayoutRes = layoutRes;
+        if (mPooled) {
+            final CoachMarkPool.PooledCoachMark recycled =
+                    CoachMarkPool.getInstance(mContext).acquire(mContext, layoutRes);
+            if (recycled != null) {
+                mRecycledPopup = recycled.popup;
+                return recycled.view;
+            }
+        }
+        return LayoutInflater.from(mContext).inflate(layoutRes, null);
+    }
+
     /**
      * Get the dimensions of the anchor view
+     *
+     * This is called on every reposition, so implementations should write into
+     * outAnchorDimens rather than allocating
      */
-    protected abstract CoachMarkDimens<Integer> getAnchorDimens();
+    protected abstract void getAnchorDimens(MutableCoachMarkDimens outAnchorDimens);
     
     /**
      * Get the current dimensions of the popup window
+     *
+     * This is called on every reposition, so implementations should write into
+     * outPopupDimens rather than allocating
      */
-    protected abstract CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens);
+    protected abstract void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+            MutableCoachMarkDimens outPopupDimens);
     
     /**
      * Perform any necessary updates to the view when popupDimens or anchorDimens have changed
      */
-    protected abstract void updateView(CoachMarkDimens<Integer> popupDimens, CoachMarkDimens<Integer> anchorDimens);
+    protected abstract void updateView(MutableCoachMarkDimens popupDimens,
+            MutableCoachMarkDimens anchorDimens);
+
+    /**
+     * Get the position on screen of the origin of the coordinates which the
+     * anchor and popup dimensions are given in, which are those that the
+     * popup window is shown at. By default these are screen coordinates.
+     *
+     * This is called on every reposition of a coach mark which is hosted or
+     * in a {@link CoachMarkFrameLayout}, so implementations should write into
+     * outOrigin rather than allocating
+     */
+    protected void getPopupOrigin(int[] outOrigin) {
+        outOrigin[0] = 0;
+        outOrigin[1] = 0;
+    }
+
+    /**
+     * Get the position of the popup on screen, which is where the layer that
+     * the coach mark is shown in expects it
+     */
+    private MutableCoachMarkDimens getScreenDimens(MutableCoachMarkDimens popupDimens) {
+        getPopupOrigin(mPopupOrigin);
+        mScreenDimens.set(popupDimens.x + mPopupOrigin[0], popupDimens.y + mPopupOrigin[1],
+                popupDimens.width, popupDimens.height);
+        return mScreenDimens;
+    }
+
+    /**
+     * Check whether the view needs to be updated even though the anchor has not
+     * moved, e.g. because the content has been resized. The popup is otherwise
+     * only repositioned when the anchor dimensions change.
+     *
+     * This is called on every reposition, so it should be cheap and must not allocate
+     */
+    protected boolean isViewDirty() {
+        return false;
+    }
     
     /**
      * Show the coach mark and start listening for changes to the anchor view
      */
     public void show() {
-        // It is assumed that the displayFrame will not change for as long as
-        // the coach mark is visible - otherwise, the positioning may be off
-        mDisplayFrame = getDisplayFrame(mAnchor);
-        final CoachMarkDimens<Integer> anchorDimens = getAnchorDimens();
-        final CoachMarkDimens<Integer> popupDimens = getPopupDimens(anchorDimens);
-        updateView(popupDimens, anchorDimens);
+        if (mRecycled) {
+            throw new IllegalStateException(
+                    "Can't show a pooled CoachMark after it has been dismissed");
+        }
+        prepare();
+
+        // The display frame is then only read again when the window is laid out
+        // or the configuration changes, which is when it can change
+        mAnchor.getWindowVisibleDisplayFrame(mDisplayFrame);
+        mDisplayFrameChanged = false;
+        getAnchorDimens(mAnchorDimens);
+        getPopupDimens(mAnchorDimens, mPopupDimens);
+        updateView(mPopupDimens, mAnchorDimens);
 
         // Dismiss coach mark after the timeout has passed if it is greater than 0.
         if (mTimeoutInMs > 0) {
             mTimeoutDismissRunnable = new Runnable() {
                 @Override
                 public void run() {
-                    if(mPopup.isShowing()) {
+                    if(isShowing()) {
                         if (mTimeoutListener != null) {
                             mTimeoutListener.onTimeout();
                         }
@@ -185,44 +495,159 @@ public abstract class CoachMark {
             getContentView().postDelayed(mTimeoutDismissRunnable, mTimeoutInMs);
         }
 
-        mPopup.setWidth(popupDimens.width);
-        mPopup.showAtLocation(mTokenView, Gravity.NO_GRAVITY, popupDimens.x, popupDimens.y);
+        final long showStart = mMetrics != null ? System.nanoTime() : 0;
+        final CoachMarkFrameLayout frameLayout = CoachMarkFrameLayout.findContaining(mAnchor);
+        mEmbedded = frameLayout != null;
+        if (mEmbedded) {
+            mLayer = frameLayout.getCoachMarkLayer();
+        } else if (mHosted && !mTouchable) {
+            // Touchable coach marks keep their own windows, so that the shared
+            // window never has to take touches meant for the windows underneath
+            mLayer = CoachMarkHost.getInstance(mTokenView).getLayer();
+        }
+        if (mLayer != null) {
+            mLayer.addCoachMark(this, mContentView, getScreenDimens(mPopupDimens),
+                    mTouchable, mTouchInterceptor);
+        } else {
+            preparePopupWindow();
+            // Size the popup up front, as in TRACK_ANCHOR_ON_CHANGE mode there may not
+            // be another reposition until the anchor moves
+            mPopup.setWidth(mPopupDimens.width);
+            mPopup.setHeight(mPopupDimens.height);
+            mPopup.showAtLocation(mTokenView, Gravity.NO_GRAVITY, mPopupDimens.x, mPopupDimens.y);
+        }
+        if (mMetrics != null) {
+            mMetrics.addShowTime(System.nanoTime() - showStart);
+        }
+        mLastAnchorDimens.set(mAnchorDimens);
+        mLastPopupDimens.set(mPopupDimens);
+        mLastRepositionFrame = mRepositionScheduler.getFrameCount();
 
-        mAnchor.getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+        if (!mEmbedded) {
+            // Embedded coach marks are repositioned by their CoachMarkFrameLayout
+            startTrackingAnchor();
+        }
+        startTrackingDisplayFrame();
         if (mShowListener != null) {
             mShowListener.onShow();
         }
         mAnchor.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
+
+        if (mMetrics != null) {
+            CoachMarkStats.onShow(this);
+            dispatchMetrics(true);
+        }
     }
 
     /**
      * Dismiss the coach mark and stop listening for changes to the anchor view
      */
     public void dismiss() {
+        if (mRecycled) {
+            return;
+        }
         mAnchor.destroyDrawingCache();
         mAnchor.removeOnAttachStateChangeListener(mOnAttachStateChangeListener);
-        mAnchor.getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
-        mPopup.getContentView().removeCallbacks(mTimeoutDismissRunnable);
-
-        mPopup.dismiss();
+        if (!mEmbedded) {
+            stopTrackingAnchor();
+        }
+        stopTrackingDisplayFrame();
+        mRepositionScheduler.cancel(this);
+        if (mContentView != null) {
+            mContentView.removeCallbacks(mTimeoutDismissRunnable);
+        }
+        if (mLayer != null) {
+            mLayer.removeCoachMark(mContentView);
+            mLayer = null;
+        } else if (mPopup != null) {
+            if (mPooled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // Remove the view from the window straight away, so that it can be
+                // reused. The exit animation from the animation style still runs.
+                mPopup.setExitTransition(null);
+            }
+            mPopup.dismiss();
+        }
 
         if (mDismissListener != null) {
             mDismissListener.onDismiss();
         }
+
+        if (mMetrics != null) {
+            CoachMarkStats.onDismiss(this);
+            dispatchMetrics(false);
+        }
+
+        if (mPooled && mLayoutRes != 0 && mPrepared) {
+            mRecycled = true;
+            onRecycle();
+            // A hosted or embedded coach mark passes on the window it was given, if any
+            CoachMarkPool.getInstance(mContext).release(mContext, mLayoutRes, mContentView,
+                    mPopup != null ? mPopup : mRecycledPopup);
+        }
+    }
+
+    /**
+     * Get the performance counters for this coach mark
+     *
+     * @return the metrics, or null if they are not being collected (see
+     *      {@link CoachMarkBuilder#setMetricsListener(CoachMarkMetrics.Listener)}
+     *      and {@link CoachMarkStats#setEnabled(boolean)})
+     */
+    public CoachMarkMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Pass the metrics to this coach mark's listener and the global listener, if any
+     */
+    private void dispatchMetrics(boolean shown) {
+        final CoachMarkMetrics.Listener globalListener = CoachMarkStats.getGlobalMetricsListener();
+        if (mMetricsListener != null) {
+            if (shown) {
+                mMetricsListener.onShow(this, mMetrics);
+            } else {
+                mMetricsListener.onDismiss(this, mMetrics);
+            }
+        }
+        if (globalListener != null && globalListener != mMetricsListener) {
+            if (shown) {
+                globalListener.onShow(this, mMetrics);
+            } else {
+                globalListener.onDismiss(this, mMetrics);
+            }
+        }
     }
 
     /**
-     * Exposes the {@link PopupWindow#getContentView()} method of {@link CoachMark#mPopup}
+     * Get the coach mark's view, preparing the coach mark first if necessary
      */
     public View getContentView() {
-        return mPopup.getContentView();
+        prepare();
+        return mContentView;
     }
     
     /**
-     * Exposes the {@link PopupWindow#isShowing()} method of {@link CoachMark#mPopup}
+     * Exposes the {@link PopupWindow#isShowing()} method of {@link CoachMark#mPopup},
+     * or whether the coach mark is in its layer if it is hosted or embedded
      */
     public boolean isShowing() {
-        return mPopup.isShowing();
+        return mLayer != null || (mPopup != null && mPopup.isShowing());
+    }
+
+    /**
+     * Whether the coach mark is drawn by a {@link CoachMarkFrameLayout} rather
+     * than in a window, which is only known once it has been shown
+     */
+    boolean isEmbedded() {
+        return mEmbedded;
+    }
+
+    /**
+     * Whether the coach mark is shown in the window shared with the other
+     * hosted coach marks, which is only known once it has been shown
+     */
+    boolean isHosted() {
+        return mLayer != null && !mEmbedded;
     }
 
     /**
@@ -239,44 +664,328 @@ public abstract class CoachMark {
      *      This doesn't apply to HighlightCoachMarks, as they always have touchable set to false
      *   2. The coach mark can be dismissed by pressing the hardware back button
      *
+     * Hosted coach marks (see {@link CoachMarkBuilder#setHosted(boolean)}) and
+     * coach marks in a {@link CoachMarkFrameLayout} can't be focused, as they
+     * don't have a window of their own.
+     *
      * @param focusable whether or not this coach mark can be focused
      */
     public void setFocusable(boolean focusable) {
-        mPopup.setFocusable(focusable);
+        mFocusable = focusable;
+        if (mPopup != null) {
+            mPopup.setFocusable(focusable);
+        }
     }
 
     /**
      * Exposes the {@link PopupWindow#isFocusable()} method of {@link CoachMark#mPopup}
      */
     public boolean isFocusable() {
-        return mPopup.isFocusable();
+        return mFocusable;
     }
     
     /**
-     * Get the visible display size of the window this view is attached to
+     * Reposition the coach mark to follow the anchor view. Nothing is recomputed
+     * unless the anchor has moved or the view is dirty, and the popup window is
+     * only updated if its dimensions have actually changed.
      */
-    private static Rect getDisplayFrame(View view) {
-        final Rect displayFrame = new Rect();
-        view.getWindowVisibleDisplayFrame(displayFrame);
-        return displayFrame;
+    void updatePosition() {
+        if (mMetrics == null) {
+            repositionPopup();
+        } else {
+            final long start = System.nanoTime();
+            repositionPopup();
+            mMetrics.addReposition(System.nanoTime() - start);
+        }
+    }
+
+    private void repositionPopup() {
+        getAnchorDimens(mAnchorDimens);
+        if (mAnchorDimens.equals(mLastAnchorDimens) && !mDisplayFrameChanged && !isViewDirty()) {
+            return;
+        }
+        mLastAnchorDimens.set(mAnchorDimens);
+        mDisplayFrameChanged = false;
+
+        getPopupDimens(mAnchorDimens, mPopupDimens);
+        updateView(mPopupDimens, mAnchorDimens);
+
+        if (!mPopupDimens.equals(mLastPopupDimens)) {
+            mLastPopupDimens.set(mPopupDimens);
+            if (mLayer != null) {
+                mLayer.updateCoachMark(mContentView, getScreenDimens(mPopupDimens));
+            } else {
+                mPopup.update(mPopupDimens.x, mPopupDimens.y,
+                        mPopupDimens.width, mPopupDimens.height);
+            }
+            if (mMetrics != null) {
+                mMetrics.addPopupUpdate();
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link CoachMarkRepositionScheduler} on the first frame after
+     * the anchor may have changed. A coach mark is only repositioned once per
+     * frame, so one which has already been repositioned in this frame waits
+     * for the next.
+     *
+     * @param frame the number of the current reposition frame
+     */
+    void onRepositionFrame(long frame) {
+        if (!isShowing()) {
+            return;
+        }
+        if (frame - mLastRepositionFrame < mRepositionFrameInterval) {
+            // Too soon after the last reposition, so try again on the next frame
+            mRepositionScheduler.schedule(this);
+            return;
+        }
+        mLastRepositionFrame = frame;
+        onAnchorChanged();
+    }
+
+    /**
+     * Called by the {@link CoachMarkFrameLayout} which the coach mark is
+     * embedded in before each frame is drawn, so that the coach mark is moved
+     * in the same frame as its anchor
+     */
+    void onContainerPreDraw() {
+        if (isShowing()) {
+            onAnchorChanged();
+        }
+    }
+
+    /**
+     * Reposition the coach mark if the anchor is still visible, or dismiss it otherwise
+     */
+    private void onAnchorChanged() {
+        if(mAnchor != null && mAnchor.isShown()) {
+            updatePosition();
+        } else {
+            dismiss();
+        }
+    }
+
+    /**
+     * Start listening for changes to the anchor view, according to the anchor tracking mode
+     */
+    private void startTrackingAnchor() {
+        final ViewTreeObserver observer = mAnchor.getViewTreeObserver();
+        if (mAnchorTrackingMode == TRACK_ANCHOR_ON_CHANGE) {
+            observer.addOnScrollChangedListener(mAnchorChangeListener);
+            observer.addOnGlobalLayoutListener(mAnchorChangeListener);
+
+            // The anchor also moves when any of its ancestors is laid out
+            View view = mAnchor;
+            while (view != null) {
+                view.addOnLayoutChangeListener(mAnchorChangeListener);
+                mTrackedAncestors.add(view);
+
+                final ViewParent parent = view.getParent();
+                view = parent instanceof View ? (View) parent : null;
+            }
+        } else {
+            observer.addOnPreDrawListener(mPreDrawListener);
+        }
+    }
+
+    /**
+     * Stop listening for changes to the anchor view
+     */
+    private void stopTrackingAnchor() {
+        final ViewTreeObserver observer = mAnchor.getViewTreeObserver();
+        if (mAnchorTrackingMode == TRACK_ANCHOR_ON_CHANGE) {
+            observer.removeOnScrollChangedListener(mAnchorChangeListener);
+            //noinspection deprecation - removeOnGlobalLayoutListener requires API 16
+            observer.removeGlobalOnLayoutListener(mAnchorChangeListener);
+
+            for (int i = 0; i < mTrackedAncestors.size(); i++) {
+                mTrackedAncestors.get(i).removeOnLayoutChangeListener(mAnchorChangeListener);
+            }
+            mTrackedAncestors.clear();
+        } else {
+            observer.removeOnPreDrawListener(mPreDrawListener);
+        }
+    }
+
+    /**
+     * Start listening for changes which may move or resize the display frame
+     */
+    private void startTrackingDisplayFrame() {
+        mDisplayFrameListener.hasWindowChanged();
+        mAnchor.getViewTreeObserver().addOnGlobalLayoutListener(mDisplayFrameListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            registerComponentCallbacks();
+        }
+    }
+
+    /**
+     * Stop listening for changes to the display frame
+     */
+    private void stopTrackingDisplayFrame() {
+        //noinspection deprecation - removeOnGlobalLayoutListener requires API 16
+        mAnchor.getViewTreeObserver().removeGlobalOnLayoutListener(mDisplayFrameListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            unregisterComponentCallbacks();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerComponentCallbacks() {
+        mContext.getApplicationContext().registerComponentCallbacks(mDisplayFrameListener);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void unregisterComponentCallbacks() {
+        mContext.getApplicationContext().unregisterComponentCallbacks(mDisplayFrameListener);
+    }
+
+    /**
+     * Read the display frame of the anchor's window again, and reposition the
+     * coach mark if it has changed
+     *
+     * @return true if the display frame has changed
+     */
+    boolean updateDisplayFrame() {
+        mAnchor.getWindowVisibleDisplayFrame(mNewDisplayFrame);
+        if (mNewDisplayFrame.equals(mDisplayFrame)) {
+            return false;
+        }
+        mDisplayFrame.set(mNewDisplayFrame);
+        mDisplayFrameChanged = true;
+        // The configuration may have changed too
+        mStyle = CoachMarkStyle.getInstance(mContext);
+        mPadding = mStyle.dipToPixels(mPaddingDip);
+        onDisplayFrameChanged(mDisplayFrame);
+        if (isShowing()) {
+            mRepositionScheduler.schedule(this);
+        }
+        return true;
+    }
+
+    /**
+     * Read the display frame again after a layout pass, but only if the
+     * anchor's window has been resized or moved since it was last read. The
+     * display frame is read from the window manager, so it isn't worth reading
+     * on every layout pass.
+     *
+     * @return true if the display frame was read again
+     */
+    boolean onWindowLayout() {
+        if (!mDisplayFrameListener.hasWindowChanged()) {
+            return false;
+        }
+        updateDisplayFrame();
+        return true;
+    }
+
+    /**
+     * Called when the display frame changes while the coach mark is showing,
+     * e.g. because the device was rotated, the window was resized or the soft
+     * keyboard was shown, before the coach mark is repositioned to fit it.
+     * {@link #mStyle} and {@link #mPadding} have already been read again, so
+     * anything derived from them should be derived again here.
+     *
+     * @param displayFrame the new display frame, which is also {@link #mDisplayFrame}
+     */
+    protected void onDisplayFrameChanged(Rect displayFrame) {
     }
     
     /**
      * Listener which is used to update the position of the coach mark when the
      * position of the anchor view is about to change
+     *
+     * The coach mark is repositioned straight away, so that it moves in the
+     * same frame as its anchor, along with any other coach marks which are
+     * waiting to be repositioned. Each is still repositioned at most once per frame.
      */
     private class CoachMarkPreDrawListener implements OnPreDrawListener {
         
         @Override
         public boolean onPreDraw() {
-            if(mAnchor != null && mAnchor.isShown()) {
-                CoachMarkDimens<Integer> anchorDimens = getAnchorDimens();
-                CoachMarkDimens<Integer> popupDimens = getPopupDimens(anchorDimens);
-                updateView(popupDimens, anchorDimens);
-                mPopup.update(popupDimens.x, popupDimens.y, popupDimens.width , popupDimens.height);
-            } else {
-                dismiss();
-            }        
+            mRepositionScheduler.onPreDraw(CoachMark.this);
+            return true;
+        }
+    }
+
+    /**
+     * Listener which is used to update the position of the coach mark only when
+     * the anchor view or one of its ancestors is laid out, or when its window
+     * scrolls. This is used instead of {@link CoachMarkPreDrawListener} in
+     * {@link #TRACK_ANCHOR_ON_CHANGE} mode.
+     */
+    private class CoachMarkAnchorChangeListener implements OnLayoutChangeListener,
+            OnScrollChangedListener, OnGlobalLayoutListener {
+
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (left != oldLeft || top != oldTop || right != oldRight || bottom != oldBottom) {
+                mRepositionScheduler.schedule(CoachMark.this);
+            }
+        }
+
+        @Override
+        public void onScrollChanged() {
+            mRepositionScheduler.schedule(CoachMark.this);
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            // Catches visibility changes which move or hide the anchor without
+            // changing the bounds of any of its ancestors
+            mRepositionScheduler.schedule(CoachMark.this);
+        }
+    }
+
+    /**
+     * Listener which is used to keep the display frame up to date. The display
+     * frame can only change when the window is laid out again, e.g. when the
+     * window is resized or its insets change, or when the configuration changes.
+     * It is read again when the configuration changes, or after a layout pass
+     * which has resized or moved the root view of the anchor's window, which
+     * covers the window being resized for the soft keyboard or split-screen.
+     */
+    private class CoachMarkDisplayFrameListener implements OnGlobalLayoutListener,
+            ComponentCallbacks {
+
+        private final int[] mRootLocation = new int[2];
+        private int mRootX;
+        private int mRootY;
+        private int mRootWidth;
+        private int mRootHeight;
+
+        @Override
+        public void onGlobalLayout() {
+            onWindowLayout();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            hasWindowChanged();
+            updateDisplayFrame();
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+
+        /**
+         * Check whether the root view of the anchor's window has been resized
+         * or moved since this was last called
+         */
+        boolean hasWindowChanged() {
+            final View rootView = mAnchor.getRootView();
+            rootView.getLocationOnScreen(mRootLocation);
+            if (mRootLocation[0] == mRootX && mRootLocation[1] == mRootY
+                    && rootView.getWidth() == mRootWidth && rootView.getHeight() == mRootHeight) {
+                return false;
+            }
+            mRootX = mRootLocation[0];
+            mRootY = mRootLocation[1];
+            mRootWidth = rootView.getWidth();
+            mRootHeight = rootView.getHeight();
             return true;
         }
     }
@@ -354,6 +1063,12 @@ public abstract class CoachMark {
             this.height = height;
         }
         
+        /**
+         * @deprecated this allocates a new {@link Point} on every call, so read
+         * {@link #x} and {@link #y} instead. Coach marks are positioned with
+         * {@link MutableCoachMarkDimens}, which can be reused between frames.
+         */
+        @Deprecated
         public Point getPos() {
             return new Point(x.intValue(), y.intValue());
         }
@@ -364,7 +1079,12 @@ public abstract class CoachMark {
         // Required parameters
         protected Context context;
         protected View anchor;
+
+        // The content, which is only created when the coach mark is prepared
+        // unless a view was given
         protected View content;
+        protected String message;
+        @LayoutRes protected int contentResId;
         
         // Optional parameters with default values
         protected long timeout = 10000;
@@ -375,15 +1095,22 @@ public abstract class CoachMark {
         protected OnShowListener showListener;
         protected OnTimeoutListener timeoutListener;
         protected boolean shouldDismissOnAnchorDetach = true;
+        protected int anchorTrackingMode = TRACK_ANCHOR_EVERY_FRAME;
+        protected int repositionFrameInterval = 1;
+        protected CoachMarkMetrics.Listener metricsListener;
+        protected boolean pooled = false;
+        protected boolean hosted = false;
+        protected boolean hasTextColor = false;
+        @ColorInt protected int textColor = Color.WHITE;
 
         public CoachMarkBuilder(Context context, View anchor, String message) {
-            this(context, anchor, new TextView(context));
-            ((TextView) content).setTextColor(Color.WHITE);
-            ((TextView) content).setText(message);
+            this(context, anchor, (View) null);
+            this.message = message;
         }
 
         public CoachMarkBuilder(Context context, View anchor, @LayoutRes int contentResId) {
-            this(context, anchor, LayoutInflater.from(context).inflate(contentResId, null));
+            this(context, anchor, (View) null);
+            this.contentResId = contentResId;
         }
         
         public CoachMarkBuilder(Context context, View anchor, View content) {
@@ -485,20 +1212,112 @@ public abstract class CoachMark {
         }
 
         /**
-         * Set the coach mark's text color.
+         * Set how the coach mark should follow its anchor view as it moves
+         *
+         * @param anchorTrackingMode either {@link #TRACK_ANCHOR_EVERY_FRAME} (the
+         *      default) or {@link #TRACK_ANCHOR_ON_CHANGE}
+         */
+        public CoachMarkBuilder setAnchorTrackingMode(@AnchorTrackingMode int anchorTrackingMode) {
+            this.anchorTrackingMode = anchorTrackingMode;
+            return this;
+        }
+
+        /**
+         * Limit how often the coach mark follows its anchor view as it moves. By
+         * default the coach mark is repositioned on every frame in which the
+         * anchor may have moved, but e.g. an interval of 2 would only reposition
+         * it on every other frame, to save work while the anchor is scrolling.
+         *
+         * @param frames the minimum number of frames between repositions (at least 1)
+         */
+        public CoachMarkBuilder setRepositionFrameInterval(int frames) {
+            if (frames < 1) {
+                throw new IllegalArgumentException("The reposition frame interval must be at least 1");
+            }
+            this.repositionFrameInterval = frames;
+            return this;
+        }
+
+        /**
+         * Set a {@link CoachMarkMetrics.Listener} to be told how long the coach
+         * mark took to create and show, and how much work it did while it was
+         * showing. Metrics are only collected if this is set, or if
+         * {@link CoachMarkStats} is enabled.
+         *
+         * @param listener the metrics listener
+         */
+        public CoachMarkBuilder setMetricsListener(CoachMarkMetrics.Listener listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
+        /**
+         * Set whether the coach mark's layout and window should be taken from,
+         * and returned to, the {@link CoachMarkPool}. This saves inflating them
+         * when many coach marks of the same type are shown one after another,
+         * but a pooled coach mark can't be shown again once it is dismissed.
+         *
+         * @param pooled whether or not to recycle the coach mark's views (defaults to false)
+         */
+        public CoachMarkBuilder setPooled(boolean pooled) {
+            this.pooled = pooled;
+            return this;
+        }
+
+        /**
+         * Set whether the coach mark should be shown in a window shared with the
+         * other hosted coach marks over the same window, rather than in a window
+         * of its own. Showing several hosted coach marks together then costs a
+         * single extra window, and following the anchor moves a view rather than
+         * updating a window. Hosted coach marks can't be focused, and don't use
+         * the animation style.
+         *
+         * The shared window never takes touches, so only coach marks which
+         * don't take touches, such as {@link HighlightCoachMark}s, are hosted.
+         * Touchable coach marks are still shown in windows of their own.
+         *
+         * @param hosted whether or not to host the coach mark in a shared window (defaults to false)
+         */
+        public CoachMarkBuilder setHosted(boolean hosted) {
+            this.hosted = hosted;
+            return this;
+        }
+
+        /**
+         * Set the coach mark's text color. If the content is a layout resource
+         * then it is only checked to be a TextView when it is inflated.
          *
          * @param textColor new text color
          */
         public CoachMarkBuilder setTextColor(@ColorInt int textColor) {
-            if (this.content instanceof TextView) {
-                ((TextView) this.content).setTextColor(textColor);
-                return this;
-            } else {
+            if (this.content != null && !(this.content instanceof TextView)) {
                 throw new IllegalStateException(
                         "Can't set a text color in a CoachMark whose content is not a TextView");
             }
+            if (this.content != null) {
+                ((TextView) this.content).setTextColor(textColor);
+            } else {
+                this.hasTextColor = true;
+                this.textColor = textColor;
+            }
+            return this;
         }
 
         public abstract CoachMark build();
+
+        /**
+         * Build the coach mark on a background thread, so that inflating and
+         * measuring its views doesn't hold up the main thread, and pass it to
+         * the listener on the main thread once it is ready to be shown. The
+         * coach mark's window is created on the main thread, as it needs a
+         * {@link android.os.Looper}. The content view must not be used by any
+         * other thread in the meantime. If building the coach mark fails, the
+         * error is thrown on the main thread instead of the listener being called.
+         *
+         * @param listener the listener to receive the coach mark
+         */
+        public void buildAsync(OnPreparedListener listener) {
+            CoachMarkPrepareExecutor.prepare(this, listener);
+        }
     }
 }
@@ -0,0 +1,136 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.widget.FrameLayout;
+
+/**
+ * A {@link FrameLayout} which draws the coach marks anchored to the views inside
+ * it itself, instead of showing them in windows of their own. Wrap an
+ * activity's content in one of these to draw its coach marks without any extra
+ * windows.
+ *
+ * The coach marks are drawn on top of the other children, and are repositioned
+ * in the same traversal that moves their anchors, so they follow scrolling and
+ * animations without trailing behind by a frame. Embedded coach marks always
+ * track their anchors in this way, whatever their anchor tracking mode, and
+ * can't be drawn outside of the bounds of the layout.
+ */
+public class CoachMarkFrameLayout extends FrameLayout
+        implements CoachMarkLayer.OnCoachMarksChangedListener {
+
+    private final CoachMarkLayer mCoachMarkLayer;
+    private final OnPreDrawListener mPreDrawListener;
+    private boolean mTracking;
+
+    public CoachMarkFrameLayout(Context context) {
+        this(context, null);
+    }
+
+    public CoachMarkFrameLayout(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CoachMarkFrameLayout(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        mCoachMarkLayer = new CoachMarkLayer(context);
+        mCoachMarkLayer.setOnCoachMarksChangedListener(this);
+        super.addView(mCoachMarkLayer, -1, new LayoutParams(
+                LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+        mPreDrawListener = new OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                repositionCoachMarks();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Find the closest {@link CoachMarkFrameLayout} containing the given view
+     *
+     * @return the layout, or null if the view is not inside one
+     */
+    static CoachMarkFrameLayout findContaining(View view) {
+        ViewParent parent = view.getParent();
+        while (parent != null) {
+            if (parent instanceof CoachMarkFrameLayout) {
+                return (CoachMarkFrameLayout) parent;
+            }
+            parent = parent.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Get the layer which the coach marks are added to
+     */
+    CoachMarkLayer getCoachMarkLayer() {
+        return mCoachMarkLayer;
+    }
+
+    @Override
+    public void addView(View child, int index, ViewGroup.LayoutParams params) {
+        // Keep the coach marks on top of the content
+        final int layerIndex = indexOfChild(mCoachMarkLayer);
+        if (layerIndex >= 0 && (index < 0 || index > layerIndex)) {
+            index = layerIndex;
+        }
+        super.addView(child, index, params);
+    }
+
+    /**
+     * Only follow the anchors while there are coach marks in the layer
+     */
+    @Override
+    public void onCoachMarksChanged(CoachMarkLayer layer) {
+        setTracking(layer.getChildCount() > 0 && isAttachedToWindowCompat());
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        setTracking(mCoachMarkLayer.getChildCount() > 0);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        setTracking(false);
+        super.onDetachedFromWindow();
+    }
+
+    private void setTracking(boolean tracking) {
+        if (tracking == mTracking) {
+            return;
+        }
+        mTracking = tracking;
+        if (tracking) {
+            getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+        } else {
+            getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        }
+    }
+
+    private boolean isAttachedToWindowCompat() {
+        return getWindowToken() != null;
+    }
+
+    /**
+     * Move the coach marks to their anchors before anything is drawn, so that
+     * they are drawn in the same frame as the anchors
+     */
+    private void repositionCoachMarks() {
+        // Coach marks may be dismissed, and removed from the layer, as they are repositioned
+        for (int i = mCoachMarkLayer.getChildCount() - 1; i >= 0; i--) {
+            if (i < mCoachMarkLayer.getChildCount()) {
+                mCoachMarkLayer.getCoachMarkAt(i).onContainerPreDraw();
+            }
+        }
+    }
+}
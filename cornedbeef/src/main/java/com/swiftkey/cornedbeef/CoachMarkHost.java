@@ -0,0 +1,176 @@
+package com.swiftkey.cornedbeef;
+
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.os.IBinder;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.PopupWindow;
+
+import java.util.HashMap;
+
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * Shows every hosted coach mark of a window in a single overlay window, rather
+ * than giving each coach mark a {@link PopupWindow} of its own. Each hosted
+ * coach mark is a child view of the overlay, so however many of them are
+ * showing there is only one extra window and surface, and repositioning a coach
+ * mark moves a view instead of updating a window.
+ *
+ * The overlay covers the whole of the window it is shown over, and never takes
+ * touches, so that the windows underneath it behave just as if it wasn't there.
+ * Only coach marks which don't take touches are hosted; the others are shown
+ * in windows of their own (see {@link CoachMark.CoachMarkBuilder#setHosted(boolean)}).
+ *
+ * The overlay is dismissed along with the last of its coach marks, unless it
+ * is held, e.g. by a {@link CoachMarkSequence} between its steps. If the window
+ * it is shown over is removed, its coach marks are dismissed and the overlay is
+ * removed with it, however many times it is held.
+ *
+ * @see CoachMark.CoachMarkBuilder#setHosted(boolean)
+ */
+final class CoachMarkHost implements CoachMarkLayer.OnCoachMarksChangedListener,
+        View.OnAttachStateChangeListener {
+
+    // The hosts which are showing, by the token of the window that they are shown over
+    private static final HashMap<IBinder, CoachMarkHost> sHosts = new HashMap<>();
+
+    private final IBinder mToken;
+    private final View mTokenView;
+    private final View mRootView;
+    private final CoachMarkLayer mLayer;
+    private final PopupWindow mWindow;
+    private int mHoldCount;
+    private boolean mRemoved;
+
+    private CoachMarkHost(IBinder token, View tokenView) {
+        mToken = token;
+        mTokenView = tokenView;
+        mRootView = tokenView.getRootView();
+        mRootView.addOnAttachStateChangeListener(this);
+        mLayer = new CoachMarkLayer(tokenView.getContext(), mRootView);
+        mLayer.setOnCoachMarksChangedListener(this);
+        mWindow = new PopupWindow(mLayer, MATCH_PARENT, MATCH_PARENT);
+        mWindow.setTouchable(false);
+        mWindow.setInputMethodMode(PopupWindow.INPUT_METHOD_NOT_NEEDED);
+        mWindow.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+    }
+
+    /**
+     * Get the host for the window which the given view is attached to, creating
+     * it if necessary
+     *
+     * @param tokenView a view attached to the window which the coach marks are shown over
+     */
+    static CoachMarkHost getInstance(View tokenView) {
+        final IBinder token = tokenView.getWindowToken();
+        if (token == null) {
+            throw new IllegalStateException(
+                    "Can't host a CoachMark over a view which is not attached to a window");
+        }
+        CoachMarkHost host = sHosts.get(token);
+        if (host == null) {
+            host = new CoachMarkHost(token, tokenView);
+            sHosts.put(token, host);
+        }
+        return host;
+    }
+
+    /**
+     * The number of windows which are hosting coach marks
+     */
+    static int getHostCount() {
+        return sHosts.size();
+    }
+
+    /**
+     * Get the layer which the hosted coach marks are added to
+     */
+    CoachMarkLayer getLayer() {
+        return mLayer;
+    }
+
+    /**
+     * Keep the overlay, once it is showing, even while it has no coach marks,
+     * until {@link #release()} is called
+     */
+    void hold() {
+        mHoldCount++;
+    }
+
+    /**
+     * Whether the overlay has been removed, along with the window it was shown over
+     */
+    boolean isRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * Stop keeping the overlay, dismissing it if it has no coach marks. This
+     * does nothing if the overlay has already been removed.
+     */
+    void release() {
+        if (mRemoved) {
+            return;
+        }
+        if (mHoldCount == 0) {
+            throw new IllegalStateException("Can't release a CoachMarkHost which is not held");
+        }
+        mHoldCount--;
+        if (mHoldCount == 0 && mLayer.getChildCount() == 0) {
+            remove();
+        }
+    }
+
+    /**
+     * Show the overlay along with the first coach mark, and dismiss it along
+     * with the last unless it is held
+     */
+    @Override
+    public void onCoachMarksChanged(CoachMarkLayer layer) {
+        if (mRemoved) {
+            return;
+        }
+        if (layer.getChildCount() == 0 && mHoldCount == 0) {
+            remove();
+            return;
+        }
+
+        if (!mWindow.isShowing() && layer.getChildCount() > 0) {
+            mWindow.showAtLocation(mTokenView, Gravity.NO_GRAVITY, 0, 0);
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View view) {
+    }
+
+    /**
+     * Dismiss the hosted coach marks and remove the overlay when the window
+     * it is shown over is removed, as nothing else may ever release it
+     */
+    @Override
+    public void onViewDetachedFromWindow(View view) {
+        mHoldCount = 0;
+        mRemoved = true;
+        sHosts.remove(mToken);
+        for (int i = mLayer.getChildCount() - 1; i >= 0; i--) {
+            final CoachMark coachMark = mLayer.getCoachMarkAt(i);
+            if (coachMark != null) {
+                coachMark.dismiss();
+            } else {
+                mLayer.removeCoachMark(mLayer.getChildAt(i));
+            }
+        }
+        mRootView.removeOnAttachStateChangeListener(this);
+        mWindow.dismiss();
+    }
+
+    private void remove() {
+        mRemoved = true;
+        sHosts.remove(mToken);
+        mRootView.removeOnAttachStateChangeListener(this);
+        mWindow.dismiss();
+    }
+}
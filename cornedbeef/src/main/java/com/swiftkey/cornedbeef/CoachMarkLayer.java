@@ -0,0 +1,320 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.View.OnTouchListener;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+
+/**
+ * Lays out the views of coach marks which are not shown in windows of their
+ * own, each at its own position, and dispatches touches to the touchable coach
+ * marks underneath them. Touches which miss all of the touchable coach marks
+ * are left for the views underneath the layer.
+ *
+ * Coach marks are given to the layer in screen coordinates, but are kept
+ * relative to the root of the window which they are anchored in. They stay in
+ * place when the layer and that window move together, and are moved if the
+ * layer moves within the window, e.g. when the layer's own window is first
+ * shown.
+ *
+ * @see CoachMarkHost
+ * @see CoachMarkFrameLayout
+ */
+class CoachMarkLayer extends ViewGroup {
+
+    /**
+     * Interface used to allow the owner of a layer to run some code when coach
+     * marks are added to, or removed from, the layer.
+     */
+    interface OnCoachMarksChangedListener {
+        /**
+         * This method will be invoked after a coach mark is added or removed.
+         */
+        void onCoachMarksChanged(CoachMarkLayer layer);
+    }
+
+    private final View mWindowRoot;
+    private final int[] mLocation = new int[2];
+    private final int[] mWindowRootLocation = new int[2];
+    private final OnPreDrawListener mPreDrawListener;
+
+    // The position of the layer relative to the root of the coach marks' window
+    private int mOffsetX;
+    private int mOffsetY;
+
+    private OnCoachMarksChangedListener mListener;
+    private View mTouchTarget;
+
+    /**
+     * Create a layer for coach marks anchored in the layer's own window
+     */
+    CoachMarkLayer(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * @param windowRoot the root view of the window which the coach marks are
+     *      anchored in, or null if it is the layer's own window
+     */
+    CoachMarkLayer(Context context, View windowRoot) {
+        super(context);
+        mWindowRoot = windowRoot;
+        mPreDrawListener = new OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (getChildCount() > 0 && updateOffset()) {
+                    offsetChildren();
+                }
+                return true;
+            }
+        };
+    }
+
+    void setOnCoachMarksChangedListener(OnCoachMarksChangedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Start showing a coach mark's view in the layer
+     *
+     * @param coachMark the coach mark
+     * @param view the coach mark's view
+     * @param dimens the position (on screen) and size of the coach mark
+     * @param touchable whether the coach mark takes touches
+     * @param touchInterceptor a listener which sees the coach mark's touches
+     *      before its view does, or null
+     */
+    void addCoachMark(CoachMark coachMark, View view, MutableCoachMarkDimens dimens,
+            boolean touchable, OnTouchListener touchInterceptor) {
+        // The layer may not have been laid out yet, so the view is only
+        // positioned within the layer when it is
+        getWindowRoot().getLocationOnScreen(mWindowRootLocation);
+        final LayoutParams params = new LayoutParams(dimens.x - mWindowRootLocation[0],
+                dimens.y - mWindowRootLocation[1], dimens.width, dimens.height);
+        params.coachMark = coachMark;
+        params.touchable = touchable;
+        params.touchInterceptor = touchInterceptor;
+        addView(view, params);
+
+        if (mListener != null) {
+            mListener.onCoachMarksChanged(this);
+        }
+    }
+
+    /**
+     * Move or resize a coach mark in the layer
+     *
+     * @param view the coach mark's view
+     * @param dimens the new position (on screen) and size of the coach mark
+     */
+    void updateCoachMark(View view, MutableCoachMarkDimens dimens) {
+        if (updateOffset()) {
+            offsetChildren();
+        }
+        setChildBounds(view, dimens.x - mWindowRootLocation[0],
+                dimens.y - mWindowRootLocation[1], dimens.width, dimens.height);
+    }
+
+    /**
+     * Stop showing a coach mark's view in the layer
+     */
+    void removeCoachMark(View view) {
+        if (view == mTouchTarget) {
+            mTouchTarget = null;
+        }
+        removeView(view);
+
+        if (mListener != null) {
+            mListener.onCoachMarksChanged(this);
+        }
+    }
+
+    /**
+     * Get the coach mark whose view is the child at the given index
+     */
+    CoachMark getCoachMarkAt(int index) {
+        return ((LayoutParams) getChildAt(index).getLayoutParams()).coachMark;
+    }
+
+    /**
+     * Move or resize a child. The child is laid out straight away if it has
+     * changed size, or just offset if it has only moved, so the layer does not
+     * need another layout pass.
+     *
+     * @param x the new left of the child, relative to the root of the window
+     * @param y the new top of the child, relative to the root of the window
+     */
+    void setChildBounds(View child, int x, int y, int width, int height) {
+        final LayoutParams params = (LayoutParams) child.getLayoutParams();
+        params.x = x;
+        params.y = y;
+        final int left = x - mOffsetX;
+        final int top = y - mOffsetY;
+        if (params.width != width || params.height != height) {
+            params.width = width;
+            params.height = height;
+            child.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+            child.layout(left, top, left + width, top + height);
+        } else {
+            child.offsetLeftAndRight(left - child.getLeft());
+            child.offsetTopAndBottom(top - child.getTop());
+            invalidate();
+        }
+    }
+
+    private View getWindowRoot() {
+        return mWindowRoot != null ? mWindowRoot : getRootView();
+    }
+
+    /**
+     * Read the position of the layer relative to the root of the coach marks'
+     * window again, which also leaves the root's position in mWindowRootLocation
+     *
+     * @return true if the layer has moved
+     */
+    private boolean updateOffset() {
+        getLocationOnScreen(mLocation);
+        getWindowRoot().getLocationOnScreen(mWindowRootLocation);
+        final int offsetX = mLocation[0] - mWindowRootLocation[0];
+        final int offsetY = mLocation[1] - mWindowRootLocation[1];
+        if (offsetX == mOffsetX && offsetY == mOffsetY) {
+            return false;
+        }
+        mOffsetX = offsetX;
+        mOffsetY = offsetY;
+        return true;
+    }
+
+    /**
+     * Move every child to its position within the window, after the layer has moved
+     */
+    private void offsetChildren() {
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+            child.offsetLeftAndRight(params.x - mOffsetX - child.getLeft());
+            child.offsetTopAndBottom(params.y - mOffsetY - child.getTop());
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(0, widthMeasureSpec),
+                getDefaultSize(0, heightMeasureSpec));
+
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+            child.measure(MeasureSpec.makeMeasureSpec(params.width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(params.height, MeasureSpec.EXACTLY));
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        updateOffset();
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+            final int left = params.x - mOffsetX;
+            final int top = params.y - mOffsetY;
+            child.layout(left, top,
+                    left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+        }
+    }
+
+    /**
+     * Keep the coach marks in place if the layer moves without being laid out
+     * again, e.g. if its window is moved
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mTouchTarget = findTouchTarget(event.getX(), event.getY());
+        }
+
+        final boolean handled = mTouchTarget != null;
+        if (mTouchTarget != null) {
+            dispatchToChild(mTouchTarget, event);
+        }
+
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchTarget = null;
+        }
+        return handled;
+    }
+
+    /**
+     * Find the top-most touchable child under the given point
+     */
+    private View findTouchTarget(float x, float y) {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+            if (params.touchable && child.getVisibility() == VISIBLE
+                    && x >= child.getLeft() && x < child.getRight()
+                    && y >= child.getTop() && y < child.getBottom()) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private void dispatchToChild(View child, MotionEvent event) {
+        final float offsetX = getScrollX() - child.getLeft();
+        final float offsetY = getScrollY() - child.getTop();
+        final OnTouchListener interceptor =
+                ((LayoutParams) child.getLayoutParams()).touchInterceptor;
+
+        event.offsetLocation(offsetX, offsetY);
+        if (interceptor == null || !interceptor.onTouch(child, event)) {
+            child.dispatchTouchEvent(event);
+        }
+        event.offsetLocation(-offsetX, -offsetY);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams params) {
+        return params instanceof LayoutParams;
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(0, 0, 0, 0);
+    }
+
+    /**
+     * The position of a coach mark relative to the root of its window, and
+     * how it takes touches
+     */
+    static class LayoutParams extends ViewGroup.LayoutParams {
+        int x;
+        int y;
+        CoachMark coachMark;
+        boolean touchable;
+        OnTouchListener touchInterceptor;
+
+        LayoutParams(int x, int y, int width, int height) {
+            super(width, height);
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
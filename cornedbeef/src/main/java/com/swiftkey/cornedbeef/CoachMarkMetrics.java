@@ -0,0 +1,156 @@
+package com.swiftkey.cornedbeef;
+
+/**
+ * Performance counters for a single coach mark.
+ *
+ * Metrics are opt-in: they are only collected for coach marks built with a
+ * {@link CoachMark.CoachMarkBuilder#setMetricsListener(Listener)}, or while
+ * {@link CoachMarkStats} is enabled. All times are in nanoseconds.
+ */
+public final class CoachMarkMetrics {
+
+    /**
+     * Interface used to allow the creator of a coach mark to find out what it cost
+     */
+    public interface Listener {
+        /**
+         * This method will be invoked when the coach mark has been shown, with the
+         * cost of creating and showing it.
+         */
+        void onShow(CoachMark coachMark, CoachMarkMetrics metrics);
+
+        /**
+         * This method will be invoked when the coach mark is dismissed, with the
+         * final counters for the whole time it was showing.
+         */
+        void onDismiss(CoachMark coachMark, CoachMarkMetrics metrics);
+    }
+
+    private final String mCoachMarkType;
+
+    private long mInflateTimeNanos;
+    private long mMeasureTimeNanos;
+    private long mShowTimeNanos;
+    private long mRepositionCount;
+    private long mRepositionTimeNanos;
+    private long mPopupUpdateCount;
+    private long mPunchHoleInvalidationCount;
+
+    CoachMarkMetrics(String coachMarkType) {
+        mCoachMarkType = coachMarkType;
+    }
+
+    private CoachMarkMetrics(CoachMarkMetrics other) {
+        mCoachMarkType = other.mCoachMarkType;
+        mInflateTimeNanos = other.mInflateTimeNanos;
+        mMeasureTimeNanos = other.mMeasureTimeNanos;
+        mShowTimeNanos = other.mShowTimeNanos;
+        mRepositionCount = other.mRepositionCount;
+        mRepositionTimeNanos = other.mRepositionTimeNanos;
+        mPopupUpdateCount = other.mPopupUpdateCount;
+        mPunchHoleInvalidationCount = other.mPunchHoleInvalidationCount;
+    }
+
+    /**
+     * Get a copy of the current values of these metrics
+     */
+    public CoachMarkMetrics copy() {
+        return new CoachMarkMetrics(this);
+    }
+
+    /**
+     * The simple class name of the coach mark, e.g. BubbleCoachMark
+     */
+    public String getCoachMarkType() {
+        return mCoachMarkType;
+    }
+
+    /**
+     * Time spent inflating and setting up the coach mark's views, not
+     * including any measuring
+     */
+    public long getInflateTimeNanos() {
+        return mInflateTimeNanos;
+    }
+
+    /**
+     * Time spent measuring the coach mark's views before it was shown
+     */
+    public long getMeasureTimeNanos() {
+        return mMeasureTimeNanos;
+    }
+
+    /**
+     * Time spent adding the coach mark's window in {@link CoachMark#show()}
+     */
+    public long getShowTimeNanos() {
+        return mShowTimeNanos;
+    }
+
+    /**
+     * The number of times the coach mark has checked whether to follow its
+     * anchor, including those where the anchor had not moved
+     */
+    public long getRepositionCount() {
+        return mRepositionCount;
+    }
+
+    /**
+     * Total time spent checking whether to follow the anchor and following it
+     */
+    public long getRepositionTimeNanos() {
+        return mRepositionTimeNanos;
+    }
+
+    /**
+     * The number of times the coach mark's window was moved or resized
+     */
+    public long getPopupUpdateCount() {
+        return mPopupUpdateCount;
+    }
+
+    /**
+     * The number of times the punch hole was redrawn. This is always 0 for
+     * coach marks other than {@link PunchHoleCoachMark}.
+     */
+    public long getPunchHoleInvalidationCount() {
+        return mPunchHoleInvalidationCount;
+    }
+
+    void addInflateTime(long nanos) {
+        mInflateTimeNanos += nanos;
+    }
+
+    void addMeasureTime(long nanos) {
+        mMeasureTimeNanos += nanos;
+    }
+
+    void addShowTime(long nanos) {
+        mShowTimeNanos += nanos;
+    }
+
+    void addReposition(long nanos) {
+        mRepositionCount++;
+        mRepositionTimeNanos += nanos;
+    }
+
+    void addPopupUpdate() {
+        mPopupUpdateCount++;
+    }
+
+    void addPunchHoleInvalidation() {
+        mPunchHoleInvalidationCount++;
+    }
+
+    @Override
+    public String toString() {
+        return mCoachMarkType
+                + " inflate=" + mInflateTimeNanos / 1000 + "us"
+                + " measure=" + mMeasureTimeNanos / 1000 + "us"
+                + " show=" + mShowTimeNanos / 1000 + "us"
+                + " repositions=" + mRepositionCount
+                + " (" + mRepositionTimeNanos / 1000 + "us)"
+                + " popupUpdates=" + mPopupUpdateCount
+                + " punchHoleInvalidations=" + mPunchHoleInvalidationCount;
+    }
+}
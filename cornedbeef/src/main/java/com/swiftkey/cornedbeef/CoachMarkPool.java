@@ -0,0 +1,253 @@
+package com.swiftkey.cornedbeef;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.PopupWindow;
+
+import androidx.annotation.LayoutRes;
+
+import java.util.ArrayList;
+
+/**
+ * Recycles the inflated layouts and {@link PopupWindow}s of dismissed coach
+ * marks, so that building another coach mark of the same type does not have to
+ * inflate its layout or create a new window again. Only coach marks built with
+ * {@link CoachMark.CoachMarkBuilder#setPooled(boolean)} are recycled.
+ *
+ * Pooled views are only reused for coach marks built with the same
+ * {@link Context} as they were inflated with. The pool is bounded per layout,
+ * and is emptied when the system asks the application to trim its memory or
+ * when the configuration changes. Views and windows belonging to an
+ * {@link Activity} are released as soon as it is destroyed (or, before Ice
+ * Cream Sandwich, when the pool is next used after it has finished).
+ */
+public final class CoachMarkPool {
+
+    private static final int DEFAULT_MAX_POOL_SIZE = 2;
+
+    private static CoachMarkPool sInstance;
+
+    private final SparseArray<ArrayList<PooledCoachMark>> mPool = new SparseArray<>();
+    private int mMaxPoolSize = DEFAULT_MAX_POOL_SIZE;
+
+    /**
+     * Get the pool, creating it if necessary
+     *
+     * @param context any context, used to listen for memory trim callbacks and
+     *                for activities being destroyed
+     */
+    public static synchronized CoachMarkPool getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CoachMarkPool();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                registerCallbacks(context.getApplicationContext(), sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void registerCallbacks(Context appContext, CoachMarkPool pool) {
+        final PoolComponentCallbacks callbacks = new PoolComponentCallbacks(pool);
+        appContext.registerComponentCallbacks(callbacks);
+        if (appContext instanceof Application) {
+            ((Application) appContext).registerActivityLifecycleCallbacks(callbacks);
+        }
+    }
+
+    CoachMarkPool() {
+    }
+
+    /**
+     * Set the maximum number of coach marks of each type which may be kept in
+     * the pool (defaults to 2). Setting this to 0 disables pooling.
+     *
+     * @param maxPoolSize the maximum number of pooled coach marks per layout
+     */
+    public synchronized void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize < 0) {
+            throw new IllegalArgumentException("The maximum pool size must not be negative");
+        }
+        mMaxPoolSize = maxPoolSize;
+        for (int i = 0; i < mPool.size(); i++) {
+            final ArrayList<PooledCoachMark> pooled = mPool.valueAt(i);
+            while (pooled.size() > maxPoolSize) {
+                pooled.remove(pooled.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Release all of the pooled views and windows
+     */
+    public synchronized void clear() {
+        mPool.clear();
+    }
+
+    /**
+     * Release the pooled views and windows which belong to the given activity
+     */
+    synchronized void clear(Activity activity) {
+        for (int i = 0; i < mPool.size(); i++) {
+            final ArrayList<PooledCoachMark> pooled = mPool.valueAt(i);
+            for (int j = pooled.size() - 1; j >= 0; j--) {
+                if (belongsTo(pooled.get(j).context, activity)) {
+                    pooled.remove(j);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of pooled coach marks with the given layout
+     */
+    synchronized int getPoolSize(@LayoutRes int layoutRes) {
+        final ArrayList<PooledCoachMark> pooled = mPool.get(layoutRes);
+        return pooled != null ? pooled.size() : 0;
+    }
+
+    /**
+     * Take a recycled view and window out of the pool
+     *
+     * @param context the context that the new coach mark is built with
+     * @param layoutRes the layout of the coach mark
+     * @return the pooled view and window, or null if there are none for the given layout and context
+     */
+    synchronized PooledCoachMark acquire(Context context, @LayoutRes int layoutRes) {
+        final ArrayList<PooledCoachMark> pooled = mPool.get(layoutRes);
+        if (pooled == null) {
+            return null;
+        }
+        for (int i = pooled.size() - 1; i >= 0; i--) {
+            final PooledCoachMark candidate = pooled.get(i);
+            if (isFinishing(candidate.context)) {
+                // Don't keep finished activities alive
+                pooled.remove(i);
+            } else if (candidate.context == context) {
+                pooled.remove(i);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return a dismissed coach mark's view and window to the pool. They are
+     * dropped if the pool for their layout is full.
+     *
+     * @param context the context that the view was inflated with
+     * @param layoutRes the layout which the view was inflated from
+     * @param view the inflated view, which must have been removed from its window
+     * @param popup the popup window whose content view is the inflated view, or
+     *      null if the coach mark was never shown in a window of its own
+     */
+    synchronized void release(Context context, @LayoutRes int layoutRes, View view, PopupWindow popup) {
+        if (view.getParent() != null || (popup != null && popup.isShowing())
+                || isFinishing(context)) {
+            return;
+        }
+        ArrayList<PooledCoachMark> pooled = mPool.get(layoutRes);
+        if (pooled == null) {
+            pooled = new ArrayList<>(mMaxPoolSize);
+            mPool.put(layoutRes, pooled);
+        }
+        if (pooled.size() < mMaxPoolSize) {
+            pooled.add(new PooledCoachMark(context, view, popup));
+        }
+    }
+
+    private static boolean isFinishing(Context context) {
+        return context instanceof Activity && ((Activity) context).isFinishing();
+    }
+
+    private static boolean belongsTo(Context context, Activity activity) {
+        while (context != activity && context instanceof ContextWrapper) {
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return context == activity;
+    }
+
+    /**
+     * A recycled coach mark layout and the popup window which shows it, if it had one
+     */
+    static final class PooledCoachMark {
+        final Context context;
+        final View view;
+        final PopupWindow popup;
+
+        PooledCoachMark(Context context, View view, PopupWindow popup) {
+            this.context = context;
+            this.view = view;
+            this.popup = popup;
+        }
+    }
+
+    /**
+     * Empties the pool when memory is short or the configuration changes, as
+     * the pooled views were inflated with the old configuration's resources,
+     * and releases the views and windows of each activity which is destroyed
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    static class PoolComponentCallbacks implements ComponentCallbacks2,
+            Application.ActivityLifecycleCallbacks {
+
+        private final CoachMarkPool mPool;
+
+        PoolComponentCallbacks(CoachMarkPool pool) {
+            mPool = pool;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            mPool.clear();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            mPool.clear();
+        }
+
+        @Override
+        public void onLowMemory() {
+            mPool.clear();
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            mPool.clear(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
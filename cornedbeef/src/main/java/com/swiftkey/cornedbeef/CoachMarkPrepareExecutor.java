@@ -0,0 +1,112 @@
+package com.swiftkey.cornedbeef;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds coach marks and creates their views on a background thread, so that
+ * inflating and measuring their views does not hold up a frame on the main
+ * thread, and hands the coach marks back on the main thread once their windows
+ * have been created there.
+ *
+ * @see CoachMark.CoachMarkBuilder#buildAsync(CoachMark.OnPreparedListener)
+ */
+final class CoachMarkPrepareExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static Executor sExecutor;
+    private static Handler sMainHandler;
+
+    private CoachMarkPrepareExecutor() {
+    }
+
+    /**
+     * Build the coach mark and create its views in the background, then create
+     * its window and pass it to the listener on the main thread. If building
+     * fails then the error is rethrown on the main thread, as it would have
+     * been if the coach mark was built there.
+     */
+    static void prepare(final CoachMark.CoachMarkBuilder builder,
+            final CoachMark.OnPreparedListener listener) {
+        final Handler mainHandler = getMainHandler();
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                CoachMark coachMark = null;
+                Throwable error = null;
+                try {
+                    coachMark = builder.build();
+                    coachMark.prepareContentView();
+                } catch (Throwable e) {
+                    error = e;
+                }
+
+                final CoachMark preparedCoachMark = coachMark;
+                final Throwable buildError = error;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (buildError instanceof RuntimeException) {
+                            throw (RuntimeException) buildError;
+                        } else if (buildError instanceof Error) {
+                            throw (Error) buildError;
+                        } else if (buildError != null) {
+                            throw new RuntimeException(buildError);
+                        }
+                        // Windows need a Looper, so they can't be created in the background
+                        preparedCoachMark.prepare();
+                        listener.onPrepared(preparedCoachMark);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replace the executor which coach marks are built on, e.g. to build them
+     * synchronously in tests
+     */
+    static synchronized void setExecutor(Executor executor) {
+        sExecutor = executor;
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    runnable.run();
+                                }
+                            }, "CoachMarkPrepare");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Don't keep a thread around once the coach marks have been prepared
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+}
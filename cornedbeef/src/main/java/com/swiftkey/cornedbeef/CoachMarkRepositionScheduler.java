@@ -0,0 +1,189 @@
+package com.swiftkey.cornedbeef;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.animation.AnimationUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Coalesces the repositioning of coach marks, so that every active coach mark
+ * is repositioned at most once per frame however many times its anchor's
+ * window is drawn, laid out or scrolled in between.
+ *
+ * Coach marks which track their anchor on every frame are repositioned
+ * synchronously from the anchor window's pre-draw pass, so that they move in
+ * the same frame as their anchor. Any other coach marks which are waiting for
+ * a reposition are run along with them. Coach marks scheduled by events (a
+ * layout, scroll or display frame change) share a single frame callback, which
+ * is posted to the {@link Choreographer} on Jelly Bean and above, or to the
+ * main thread's message queue on older APIs.
+ *
+ * Frames are told apart by {@link AnimationUtils#currentAnimationTimeMillis()},
+ * which is locked to the time of the current frame on Nougat and above. On
+ * older APIs it is the current time, so passes a millisecond or more apart
+ * are counted as separate frames. This must only be used from the main thread.
+ */
+final class CoachMarkRepositionScheduler {
+
+    private static CoachMarkRepositionScheduler sInstance;
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+    private final FrameCallbackPoster mPoster;
+
+    // Two lists are swapped on every frame, so that coach marks can be
+    // (re)scheduled while the current frame is being processed
+    private ArrayList<CoachMark> mPending = new ArrayList<>();
+    private ArrayList<CoachMark> mRunning = new ArrayList<>();
+    private boolean mScheduled;
+    private long mFrameCount;
+    private long mFrameTime = -1;
+
+    static synchronized CoachMarkRepositionScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new CoachMarkRepositionScheduler();
+        }
+        return sInstance;
+    }
+
+    private CoachMarkRepositionScheduler() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mPoster = new ChoreographerPoster(mFrameRunnable);
+        } else {
+            mPoster = new HandlerPoster(mFrameRunnable);
+        }
+    }
+
+    /**
+     * Reposition the given coach mark on the next frame. Scheduling a coach mark
+     * which is already waiting for the next frame has no effect.
+     */
+    void schedule(CoachMark coachMark) {
+        addPending(coachMark);
+        if (!mScheduled) {
+            mScheduled = true;
+            mPoster.post();
+        }
+    }
+
+    /**
+     * Reposition the given coach mark straight away, from the pre-draw pass of
+     * its anchor's window, along with any other coach marks which are waiting
+     * for the next frame
+     */
+    void onPreDraw(CoachMark coachMark) {
+        addPending(coachMark);
+        // Only the first pre-draw pass of a frame starts a new one
+        final long frameTime = AnimationUtils.currentAnimationTimeMillis();
+        if (frameTime != mFrameTime) {
+            startFrame(frameTime);
+        }
+        runPending();
+    }
+
+    private void addPending(CoachMark coachMark) {
+        if (!coachMark.mRepositionScheduled) {
+            coachMark.mRepositionScheduled = true;
+            mPending.add(coachMark);
+        }
+    }
+
+    /**
+     * Stop the given coach mark from being repositioned on the next frame
+     */
+    void cancel(CoachMark coachMark) {
+        if (coachMark.mRepositionScheduled) {
+            coachMark.mRepositionScheduled = false;
+            mPending.remove(coachMark);
+        }
+    }
+
+    /**
+     * The number of frames in which coach marks have been repositioned so far
+     */
+    long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Reposition the pending coach marks from the frame callback, which always
+     * runs at the start of a new frame
+     */
+    void doFrame() {
+        mScheduled = false;
+        startFrame(AnimationUtils.currentAnimationTimeMillis());
+        runPending();
+    }
+
+    private void startFrame(long frameTime) {
+        mFrameTime = frameTime;
+        mFrameCount++;
+    }
+
+    /**
+     * Reposition the pending coach marks. This may run several times in a
+     * frame, e.g. from the pre-draw pass of each window with a coach mark.
+     */
+    private void runPending() {
+        final ArrayList<CoachMark> running = mPending;
+        mPending = mRunning;
+        mRunning = running;
+
+        // The coach marks may be scheduled again while they are repositioned
+        for (int i = 0; i < running.size(); i++) {
+            running.get(i).mRepositionScheduled = false;
+        }
+        for (int i = 0; i < running.size(); i++) {
+            running.get(i).onRepositionFrame(mFrameCount);
+        }
+        running.clear();
+    }
+
+    private interface FrameCallbackPoster {
+        void post();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerPoster implements FrameCallbackPoster,
+            Choreographer.FrameCallback {
+
+        private final Runnable mRunnable;
+
+        ChoreographerPoster(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mRunnable.run();
+        }
+    }
+
+    private static class HandlerPoster implements FrameCallbackPoster {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final Runnable mRunnable;
+
+        HandlerPoster(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void post() {
+            mHandler.post(mRunnable);
+        }
+    }
+}
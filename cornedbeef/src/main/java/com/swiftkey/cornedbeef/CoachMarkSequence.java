@@ -0,0 +1,309 @@
+package com.swiftkey.cornedbeef;
+
+import java.util.ArrayList;
+
+/**
+ * Runs a guided tour: an ordered list of coach marks, shown one after another.
+ *
+ * Every step is made hosted (see {@link CoachMark.CoachMarkBuilder#setHosted(boolean)}),
+ * and the shared window is kept for the whole of the sequence, so moving
+ * between steps which don't take touches swaps one view for another in the
+ * same window rather than removing one window and adding another. Steps which
+ * do take touches are still shown in windows of their own. While a step is showing the next one
+ * is built and prepared in the background, so that moving on to it only needs
+ * to add its prepared view, and the old step is removed in the same frame.
+ *
+ * Dismissing the current step, whether by calling {@link CoachMark#dismiss()},
+ * through its timeout or by touching a bubble coach mark, moves on to the next
+ * step in the same way as {@link #next()}. If the step is dismissed because the
+ * window it is shown over has been removed, the sequence finishes instead.
+ */
+public class CoachMarkSequence {
+
+    /**
+     * Interface used to allow the creator of a sequence to run some code when
+     * each of its steps is shown.
+     */
+    public interface OnStepListener {
+        /**
+         * This method will be invoked when a step of the sequence is shown.
+         *
+         * @param sequence the sequence
+         * @param step the index of the step
+         * @param coachMark the coach mark of the step
+         */
+        void onStep(CoachMarkSequence sequence, int step, CoachMark coachMark);
+    }
+
+    /**
+     * Interface used to allow the creator of a sequence to run some code when
+     * the sequence finishes.
+     */
+    public interface OnFinishListener {
+        /**
+         * This method will be invoked when the last step of the sequence is
+         * dismissed, or the sequence is finished early.
+         */
+        void onFinish(CoachMarkSequence sequence);
+    }
+
+    private final ArrayList<CoachMark.CoachMarkBuilder> mSteps = new ArrayList<>();
+
+    private OnStepListener mStepListener;
+    private OnFinishListener mFinishListener;
+
+    private boolean mRunning;
+    private int mStep = -1;
+    private CoachMark mCurrentCoachMark;
+    // The next step, which is built and prepared while the current step is showing
+    private int mPreparingStep = -1;
+    private CoachMark mPreparedCoachMark;
+    // Whether to show the next step as soon as it has been prepared
+    private boolean mWaitingForStep;
+    // Whether the current step is being dismissed by the sequence itself
+    private boolean mDismissingStep;
+    private CoachMarkHost mHost;
+
+    /**
+     * Add a step to the end of the sequence. The builder is not changed until
+     * the sequence is started, when it is made hosted and its dismiss listener
+     * is wrapped so that dismissing the step moves the sequence on. The
+     * builder should not be used for anything else after that.
+     *
+     * @param builder the builder for the step's coach mark
+     */
+    public CoachMarkSequence addStep(CoachMark.CoachMarkBuilder builder) {
+        if (mRunning) {
+            throw new IllegalStateException("Can't add a step to a CoachMarkSequence which is running");
+        }
+        mSteps.add(builder);
+        return this;
+    }
+
+    /**
+     * Set a listener to be called as each step is shown
+     */
+    public CoachMarkSequence setOnStepListener(OnStepListener listener) {
+        mStepListener = listener;
+        return this;
+    }
+
+    /**
+     * Set a listener to be called when the sequence finishes
+     */
+    public CoachMarkSequence setOnFinishListener(OnFinishListener listener) {
+        mFinishListener = listener;
+        return this;
+    }
+
+    /**
+     * Show the first step of the sequence. It is built on the calling thread,
+     * and the following steps are built in the background.
+     *
+     * @see #addStep(CoachMark.CoachMarkBuilder)
+     */
+    public void start() {
+        if (mRunning) {
+            throw new IllegalStateException("CoachMarkSequence is already running");
+        }
+        if (mSteps.isEmpty()) {
+            throw new IllegalStateException("Can't start a CoachMarkSequence without any steps");
+        }
+        mRunning = true;
+
+        for (int i = 0; i < mSteps.size(); i++) {
+            final CoachMark.CoachMarkBuilder builder = mSteps.get(i);
+            builder.setHosted(true);
+            // The listener is still wrapped if the sequence has been run before
+            if (!(builder.dismissListener instanceof StepDismissListener)
+                    || !((StepDismissListener) builder.dismissListener).isStepOf(this, i)) {
+                builder.setOnDismissListener(new StepDismissListener(i, builder.dismissListener));
+            }
+        }
+
+        final CoachMark first = mSteps.get(0).build();
+        showStep(0, first);
+    }
+
+    /**
+     * Move on to the next step, or finish the sequence after the last one. If
+     * the next step is still being prepared then the current step stays until
+     * it is ready.
+     */
+    public void next() {
+        if (!mRunning) {
+            return;
+        }
+        final int step = mStep + 1;
+        if (step >= mSteps.size()) {
+            finish();
+        } else if (mPreparedCoachMark != null && mPreparingStep == step) {
+            final CoachMark coachMark = mPreparedCoachMark;
+            mPreparedCoachMark = null;
+            mPreparingStep = -1;
+            showStep(step, coachMark);
+        } else {
+            mWaitingForStep = true;
+            prepareStep(step);
+        }
+    }
+
+    /**
+     * Dismiss the current step and stop the sequence, without showing any more
+     * steps
+     */
+    public void finish() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mWaitingForStep = false;
+        mPreparedCoachMark = null;
+        mPreparingStep = -1;
+        dismissCurrentStep();
+        if (mHost != null) {
+            mHost.release();
+            mHost = null;
+        }
+        if (mFinishListener != null) {
+            mFinishListener.onFinish(this);
+        }
+    }
+
+    /**
+     * Whether the sequence has been started and not yet finished
+     */
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Get the index of the step which is showing
+     *
+     * @return the step, or -1 if the sequence is not running
+     */
+    public int getCurrentStep() {
+        return mRunning ? mStep : -1;
+    }
+
+    /**
+     * Get the coach mark of the step which is showing
+     *
+     * @return the coach mark, or null if no step is showing
+     */
+    public CoachMark getCurrentCoachMark() {
+        return mCurrentCoachMark;
+    }
+
+    public int getStepCount() {
+        return mSteps.size();
+    }
+
+    /**
+     * Show a step, and then dismiss the previous one, so that the shared window
+     * always has a coach mark in it and both changes are drawn in the same frame
+     */
+    private void showStep(int step, CoachMark coachMark) {
+        final CoachMark previous = mCurrentCoachMark;
+        mWaitingForStep = false;
+        mStep = step;
+        mCurrentCoachMark = coachMark;
+        coachMark.show();
+        if (mRunning && mHost == null && coachMark.isHosted()) {
+            // Keep the shared window between steps, even if a step is dismissed
+            // before the next one is ready
+            mHost = CoachMarkHost.getInstance(coachMark.mTokenView);
+            mHost.hold();
+        }
+
+        if (previous != null) {
+            mDismissingStep = true;
+            try {
+                previous.dismiss();
+            } finally {
+                mDismissingStep = false;
+            }
+        }
+
+        if (mStepListener != null) {
+            mStepListener.onStep(this, step, coachMark);
+        }
+        if (mRunning && mStep == step && step + 1 < mSteps.size()) {
+            prepareStep(step + 1);
+        }
+    }
+
+    private void dismissCurrentStep() {
+        final CoachMark current = mCurrentCoachMark;
+        mCurrentCoachMark = null;
+        if (current != null) {
+            mDismissingStep = true;
+            try {
+                current.dismiss();
+            } finally {
+                mDismissingStep = false;
+            }
+        }
+    }
+
+    /**
+     * Build and prepare a step in the background, unless it is already
+     */
+    private void prepareStep(final int step) {
+        if (mPreparingStep == step) {
+            return;
+        }
+        mPreparingStep = step;
+        mPreparedCoachMark = null;
+        mSteps.get(step).buildAsync(new CoachMark.OnPreparedListener() {
+            @Override
+            public void onPrepared(CoachMark coachMark) {
+                if (!mRunning || mPreparingStep != step) {
+                    // The sequence has moved on without this step
+                    return;
+                }
+                if (mWaitingForStep) {
+                    mPreparingStep = -1;
+                    showStep(step, coachMark);
+                } else {
+                    mPreparedCoachMark = coachMark;
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves on to the next step when a step is dismissed by anything other
+     * than the sequence
+     */
+    private class StepDismissListener implements CoachMark.OnDismissListener {
+
+        private final int mListenerStep;
+        private final CoachMark.OnDismissListener mListener;
+
+        StepDismissListener(int step, CoachMark.OnDismissListener listener) {
+            mListenerStep = step;
+            mListener = listener;
+        }
+
+        boolean isStepOf(CoachMarkSequence sequence, int step) {
+            return sequence == CoachMarkSequence.this && step == mListenerStep;
+        }
+
+        @Override
+        public void onDismiss() {
+            if (mListener != null) {
+                mListener.onDismiss();
+            }
+            if (!mDismissingStep && mRunning && mStep == mListenerStep) {
+                mCurrentCoachMark = null;
+                if (mHost != null && mHost.isRemoved()) {
+                    // There is no longer a window to show the next step over
+                    finish();
+                } else {
+                    next();
+                }
+            }
+        }
+    }
+}
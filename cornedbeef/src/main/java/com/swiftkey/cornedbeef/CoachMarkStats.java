@@ -0,0 +1,89 @@
+package com.swiftkey.cornedbeef;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Global switch and snapshot API for {@link CoachMarkMetrics}.
+ *
+ * While enabled, metrics are collected for every coach mark that is built,
+ * and the coach marks which are currently showing can be listed together with
+ * their counters, e.g. to catch regressions in release builds. These methods
+ * must only be called from the main thread.
+ */
+public final class CoachMarkStats {
+
+    private static final List<CoachMark> sActiveCoachMarks = new ArrayList<>();
+
+    private static boolean sEnabled;
+    private static CoachMarkMetrics.Listener sGlobalListener;
+
+    private CoachMarkStats() {
+    }
+
+    /**
+     * Set whether metrics should be collected for all coach marks, rather than
+     * only for those with a metrics listener. This only affects coach marks
+     * built afterwards.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Whether metrics are being collected for all coach marks
+     */
+    public static boolean isEnabled() {
+        return sEnabled || sGlobalListener != null;
+    }
+
+    /**
+     * Set a listener to be told about the metrics of every coach mark. Setting
+     * a listener also enables metrics collection for coach marks built afterwards.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public static void setGlobalMetricsListener(CoachMarkMetrics.Listener listener) {
+        sGlobalListener = listener;
+    }
+
+    static CoachMarkMetrics.Listener getGlobalMetricsListener() {
+        return sGlobalListener;
+    }
+
+    /**
+     * Get a snapshot of the metrics of every coach mark which is currently
+     * showing and collecting metrics
+     */
+    public static List<CoachMarkMetrics> getActiveCoachMarkMetrics() {
+        final List<CoachMarkMetrics> snapshot = new ArrayList<>(sActiveCoachMarks.size());
+        for (int i = 0; i < sActiveCoachMarks.size(); i++) {
+            snapshot.add(sActiveCoachMarks.get(i).getMetrics().copy());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write the metrics of every coach mark which is currently showing and
+     * collecting metrics, one per line
+     */
+    public static void dump(PrintWriter writer) {
+        final List<CoachMarkMetrics> snapshot = getActiveCoachMarkMetrics();
+        writer.println("Active coach marks: " + snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            writer.println("  " + snapshot.get(i));
+        }
+        writer.flush();
+    }
+
+    static void onShow(CoachMark coachMark) {
+        if (!sActiveCoachMarks.contains(coachMark)) {
+            sActiveCoachMarks.add(coachMark);
+        }
+    }
+
+    static void onDismiss(CoachMark coachMark) {
+        sActiveCoachMarks.remove(coachMark);
+    }
+}
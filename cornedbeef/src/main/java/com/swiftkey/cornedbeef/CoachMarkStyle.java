@@ -0,0 +1,205 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Build;
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.WeakHashMap;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.DrawableRes;
+
+/**
+ * The CornedBeef colors and dimensions, resolved from the resources once for
+ * each configuration and shared by every coach mark built in it. Coach marks
+ * read what they need from here when they are built, so repositioning them
+ * never has to go back to the {@link Resources}.
+ *
+ * The style also caches the state of the bubble and highlight backgrounds for
+ * each color (and stroke width) they are drawn in, so that every coach mark in
+ * the same color shares one drawable state rather than mutating its own copy.
+ *
+ * A style is kept for each {@link Resources} it is asked for with, and only
+ * held weakly, so contexts with different configurations (an input method,
+ * a configuration context or a second display) each keep their own style and
+ * cached drawables. A style is resolved again when the configuration
+ * (including the density) of its resources changes.
+ */
+public final class CoachMarkStyle {
+
+    private static final WeakHashMap<Resources, CoachMarkStyle> sInstances =
+            new WeakHashMap<>();
+
+    private final Configuration mConfiguration;
+    private final float mDensity;
+    private final int mDisplayWidth;
+    private final boolean mRtl;
+    @ColorInt private final int mDefaultColor;
+    @ColorInt private final int mOverlayColor;
+    private final float mBorderRadius;
+    private final float mPunchHoleGap;
+    private final int mPunchHoleHorizontalPadding;
+    private final int mPunchHoleVerticalPadding;
+    private final int mHighlightStrokeWidth;
+    private final int mBubbleArrowWidth;
+    private final int mBubbleArrowHeight;
+
+    // Cached drawable states, keyed by color
+    private final SparseArray<Drawable.ConstantState> mBubbleBackgrounds = new SparseArray<>();
+    // Cached highlight drawable states, keyed by stroke width and then color
+    private final SparseArray<SparseArray<Drawable.ConstantState>> mHighlightBackgrounds =
+            new SparseArray<>();
+
+    /**
+     * Get the style for the given context's resources, resolving it if it has
+     * not been asked for before or its configuration has changed
+     */
+    public static synchronized CoachMarkStyle getInstance(Context context) {
+        final Resources res = context.getResources();
+        CoachMarkStyle style = sInstances.get(res);
+        if (style == null || !style.mConfiguration.equals(res.getConfiguration())) {
+            style = new CoachMarkStyle(context, res);
+            sInstances.put(res, style);
+        }
+        return style;
+    }
+
+    private CoachMarkStyle(Context context, Resources res) {
+        mConfiguration = new Configuration(res.getConfiguration());
+        mDensity = res.getDisplayMetrics().density;
+        mDisplayWidth = res.getDisplayMetrics().widthPixels;
+        mRtl = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && mConfiguration.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+        mDefaultColor = CoachMarkUtils.resolveColor(context, R.color.default_colour);
+        mOverlayColor = CoachMarkUtils.resolveColor(context, R.color.transluscent_background);
+        mBorderRadius = res.getDimension(R.dimen.coach_mark_border_radius);
+        mPunchHoleGap = res.getDimension(R.dimen.punchhole_coach_mark_gap);
+        mPunchHoleHorizontalPadding =
+                (int) res.getDimension(R.dimen.punchhole_coach_mark_horizontal_padding);
+        mPunchHoleVerticalPadding =
+                (int) res.getDimension(R.dimen.punchhole_coach_mark_vertical_padding);
+        mHighlightStrokeWidth = (int) res.getDimension(R.dimen.highlight_coach_mark_stroke_width);
+        mBubbleArrowWidth = res.getDimensionPixelSize(R.dimen.bubble_coach_mark_arrow_width);
+        mBubbleArrowHeight = res.getDimensionPixelSize(R.dimen.bubble_coach_mark_arrow_height);
+    }
+
+    /**
+     * Convert density-independent pixels (dip) to pixels, in the same way as
+     * {@link android.util.TypedValue#applyDimension(int, float, android.util.DisplayMetrics)}
+     */
+    public int dipToPixels(float dip) {
+        return (int) (dip * mDensity);
+    }
+
+    /**
+     * The width of the display in pixels
+     */
+    public int getDisplayWidth() {
+        return mDisplayWidth;
+    }
+
+    /**
+     * Whether the layout direction is right-to-left. Below JELLY_BEAN_MR1 it
+     * is assumed to be left-to-right.
+     */
+    public boolean isRtl() {
+        return mRtl;
+    }
+
+    /**
+     * The color of bubbles and highlights, unless the builder is given another
+     */
+    @ColorInt
+    public int getDefaultColor() {
+        return mDefaultColor;
+    }
+
+    /**
+     * The color of the overlay around punch holes, unless the builder is given another
+     */
+    @ColorInt
+    public int getOverlayColor() {
+        return mOverlayColor;
+    }
+
+    public float getBorderRadius() {
+        return mBorderRadius;
+    }
+
+    /**
+     * The total vertical space between a punch hole's target and the edge of the hole
+     */
+    public float getPunchHoleGap() {
+        return mPunchHoleGap;
+    }
+
+    public int getPunchHoleHorizontalPadding() {
+        return mPunchHoleHorizontalPadding;
+    }
+
+    public int getPunchHoleVerticalPadding() {
+        return mPunchHoleVerticalPadding;
+    }
+
+    public int getHighlightStrokeWidth() {
+        return mHighlightStrokeWidth;
+    }
+
+    public int getBubbleArrowWidth() {
+        return mBubbleArrowWidth;
+    }
+
+    public int getBubbleArrowHeight() {
+        return mBubbleArrowHeight;
+    }
+
+    /**
+     * Get a bubble background in the given color, sharing its state with every
+     * other bubble background in that color
+     */
+    public synchronized BubbleDrawable getBubbleBackground(@ColorInt int color) {
+        Drawable.ConstantState state = mBubbleBackgrounds.get(color);
+        if (state == null) {
+            state = new BubbleDrawable(color, mBorderRadius,
+                    mBubbleArrowWidth, mBubbleArrowHeight).getConstantState();
+            mBubbleBackgrounds.put(color, state);
+        }
+        return (BubbleDrawable) state.newDrawable();
+    }
+
+    /**
+     * Get a highlight background with the given stroke, sharing its state with
+     * every other highlight background with that stroke
+     */
+    public synchronized Drawable getHighlightBackground(Context context, @ColorInt int color,
+            int strokeWidth) {
+        SparseArray<Drawable.ConstantState> cache = mHighlightBackgrounds.get(strokeWidth);
+        if (cache == null) {
+            cache = new SparseArray<>();
+            mHighlightBackgrounds.put(strokeWidth, cache);
+        }
+        Drawable.ConstantState state = cache.get(color);
+        if (state == null) {
+            final GradientDrawable background = (GradientDrawable) getMutableDrawable(
+                    context, R.drawable.highlight_coach_mark_bg);
+            background.setStroke(strokeWidth, color);
+            state = background.getConstantState();
+            cache.put(color, state);
+        }
+        return state.newDrawable(context.getResources());
+    }
+
+    /**
+     * Load a drawable with its own state, so that changing it does not change
+     * the drawables which the resources hand out
+     */
+    @SuppressWarnings("deprecation")
+    private static Drawable getMutableDrawable(Context context, @DrawableRes int id) {
+        return context.getResources().getDrawable(id).mutate();
+    }
+}
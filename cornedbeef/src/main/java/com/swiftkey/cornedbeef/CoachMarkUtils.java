@@ -9,41 +9,20 @@ import androidx.annotation.ColorRes;
 
 /**
  * Utils for calculating the size and position of the coach mark popup and pointy mark and for
- * resolving colors.
+ * resolving colors. The calculations themselves live in {@link CoachMarkGeometry}, in the
+ * Android-free cornedbeef-core module.
  * 
  * @author lachie
  */
 public class CoachMarkUtils {
 
     /**
-     * The popup width is determined by the minimum width excluding content
-     * (usually the width of the pointy mark and padding), the maximum width
-     * (usually the width of the screen), a desired width (including content),
-     * the width of the anchor and the position along the anchor at which the
-     * pointy mark should point. Normally the popup takes the desired width or
-     * the maximum width, unless the target arrow would otherwise be positioned
-     * outside of the popup, in which case the popup is expanded to include the
-     * pointy mark.
-
-     * @param minWidth - the minimum width of the popup (not including content)
-     * @param maxWidth - the maximum width of the popup
-     * @param desiredWidth - the desired with of the popup (including content)
-     * @param anchorWidth - the width of the anchor view
-     * @param target - the position on the anchor at which the pointy mark should point
+     * @see CoachMarkGeometry#getPopupWidth(int, int, int, int, float)
      */
     public static int getPopupWidth(int minWidth, int maxWidth,
             int desiredWidth, int anchorWidth, float target) {
-        // Minimum width as a percentage of the anchor width
-        final double width = 2 * Math.abs(0.5 - target);
-
-        // Minimum width as an absolute value
-        int popupWidth = (int) (anchorWidth * width) + minWidth;
-
-        // Make sure not smaller than the minimum width
-        popupWidth = popupWidth > desiredWidth ? popupWidth : desiredWidth;
-
-        // Make sure not larger than the max width
-        return popupWidth > maxWidth ? maxWidth : popupWidth;
+        return CoachMarkGeometry.getPopupWidth(
+                minWidth, maxWidth, desiredWidth, anchorWidth, target);
     }
 
     /**
@@ -52,6 +31,11 @@ public class CoachMarkUtils {
      * below it. If showBelow is true but there is not enough room below the
      * anchor then the popup is positioned above it. If centering the popup would
      * move it off-screen then it is shifted left or right.
+     *
+     * This allocates a new {@link Point}, so prefer
+     * {@link CoachMarkGeometry#getPopupX(int, int, int, int, int)} and
+     * {@link CoachMarkGeometry#getPopupY(int, int, int, int, boolean)} for
+     * anything which runs on every frame.
      * 
      * @param anchorDimens - the dimensions of the anchor view
      * @param popupWidth - the width of the popup
@@ -63,45 +47,36 @@ public class CoachMarkUtils {
     public static Point getPopupPosition(final CoachMark.CoachMarkDimens<Integer> anchorDimens,
             final int popupWidth, final int popupHeight, final int screenWidth,
             final int screenHeight, final int padding, final boolean showBelow) {
+        return new Point(
+                CoachMarkGeometry.getPopupX(anchorDimens.x, anchorDimens.width,
+                        popupWidth, screenWidth, padding),
+                CoachMarkGeometry.getPopupY(anchorDimens.y, anchorDimens.height,
+                        popupHeight, screenHeight, showBelow));
+    }
 
-        // Get popup X and Y Coords
-        int popupX = (anchorDimens.width - popupWidth) / 2 + anchorDimens.x;
-
-        int popupAboveY = anchorDimens.y - popupHeight;
-        int popupBelowY = anchorDimens.y + anchorDimens.height;
-        
-        int popupY;
-        if(showBelow) {
-            // If there is not enough room below move the popup above
-            popupY = popupBelowY + popupHeight > screenHeight ? popupAboveY : popupBelowY;
-        } else {
-            // If there is not enough room above move the popup below
-            popupY = popupAboveY < 0 ? popupBelowY : popupAboveY;
-        }
-
-        // Constrain popupX to the screen size (minus padding)
-        popupX = popupX < padding ? padding : 
-            (popupX + popupWidth > (screenWidth-padding) ? 
-                    screenWidth - popupWidth - padding : popupX);
+    /**
+     * @see CoachMarkGeometry#getPopupX(int, int, int, int, int)
+     */
+    public static int getPopupX(final int anchorX, final int anchorWidth,
+            final int popupWidth, final int screenWidth, final int padding) {
+        return CoachMarkGeometry.getPopupX(anchorX, anchorWidth, popupWidth, screenWidth, padding);
+    }
 
-        return new Point(popupX, popupY);
+    /**
+     * @see CoachMarkGeometry#getPopupY(int, int, int, int, boolean)
+     */
+    public static int getPopupY(final int anchorY, final int anchorHeight,
+            final int popupHeight, final int screenHeight, final boolean showBelow) {
+        return CoachMarkGeometry.getPopupY(anchorY, anchorHeight, popupHeight, screenHeight, showBelow);
     }
 
     /**
-     * Calculate the size of the arrow's left margin
-     * 
-     * @param target - the position on the anchor at which the arrow should point
-     * @param anchorWidth - the width of the anchor view
-     * @param arrowWidth - the width of the arrow
-     * @param anchorX - the x coordinate of the anchor view
-     * @param popupX - the x coordinate of the popup view
-     * @param minMargin - minimum accepted value of left margin
-     * @param maxMargin - maximum accepted value of left margin
+     * @see CoachMarkGeometry#getArrowLeftMargin(float, int, int, int, int, int, int)
      */
     public static int getArrowLeftMargin(float target, int anchorWidth, 
             int arrowWidth, int anchorX, int popupX, int minMargin, int maxMargin) {
-        int margin = (int) (target * anchorWidth) - (arrowWidth / 2) + anchorX - popupX;
-        return margin < minMargin ? minMargin : (margin > maxMargin ? maxMargin : margin);
+        return CoachMarkGeometry.getArrowLeftMargin(
+                target, anchorWidth, arrowWidth, anchorX, popupX, minMargin, maxMargin);
     }
 
     /**
@@ -1,9 +1,6 @@
 package com.swiftkey.cornedbeef;
 
 import android.content.Context;
-import android.graphics.drawable.GradientDrawable;
-import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.PopupWindow;
@@ -17,17 +14,14 @@ import androidx.annotation.LayoutRes;
  * @author lachie
  */
 public class HighlightCoachMark extends InternallyAnchoredCoachMark {
+    private final int mStrokeWidth;
+    @ColorInt private final int mHighlightColor;
     private View mView;
 
     protected HighlightCoachMark(HighlightCoachMarkBuilder builder) {
         super(builder);
-
-        try {
-            ((GradientDrawable) mView.getBackground().mutate()).setStroke(
-                    builder.strokeWidth, builder.highlightColor);
-        } catch (Exception e) {
-            Log.e("HighlightCoachMark", "Could not change the coach mark color and stroke width");
-        }
+        mStrokeWidth = builder.strokeWidth;
+        mHighlightColor = builder.highlightColor;
     }
 
     @Override
@@ -36,24 +30,34 @@ public class HighlightCoachMark extends InternallyAnchoredCoachMark {
                 contentView,
                 LayoutParams.WRAP_CONTENT, 
                 LayoutParams.WRAP_CONTENT);
-
-        popup.setTouchable(false);
         return popup;
     }
 
+    @Override
+    protected boolean isTouchable() {
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
     protected View createContentView(View content) {
-        mView = LayoutInflater.from(mContext).inflate(R.layout.highlight_coach_mark, null);
+        mView = inflateCoachMarkLayout(R.layout.highlight_coach_mark);
+
+        // Use a background shared with other highlights of the same color and stroke width
+        mView.setBackgroundDrawable(
+                mStyle.getHighlightBackground(mContext, mHighlightColor, mStrokeWidth));
         return mView;
     }
 
     @Override
-    protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
-        return anchorDimens;
+    protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+            MutableCoachMarkDimens outPopupDimens) {
+        outPopupDimens.set(anchorDimens);
     }
 
     @Override
-    protected void updateView(CoachMarkDimens<Integer> popupDimens,  CoachMarkDimens<Integer> anchorDimens) {
-        mPopup.update(popupDimens.x, popupDimens.y, popupDimens.width, popupDimens.height);
+    protected void updateView(MutableCoachMarkDimens popupDimens,
+            MutableCoachMarkDimens anchorDimens) {
+        // Nothing to update - the popup simply covers the anchor
     }
     
     public static class HighlightCoachMarkBuilder extends InternallyAnchoredCoachMarkBuilder {
@@ -83,9 +87,9 @@ public class HighlightCoachMark extends InternallyAnchoredCoachMark {
         }
 
         private void setDefaultValues(final Context context) {
-            this.highlightColor = CoachMarkUtils.resolveColor(context, R.color.default_colour);
-            this.strokeWidth = (int) context.getResources().getDimension(
-                    R.dimen.highlight_coach_mark_stroke_width);
+            final CoachMarkStyle style = CoachMarkStyle.getInstance(context);
+            this.highlightColor = style.getDefaultColor();
+            this.strokeWidth = style.getHighlightStrokeWidth();
         }
 
         /**
@@ -7,32 +7,49 @@ import androidx.annotation.LayoutRes;
 
 public abstract class InternallyAnchoredCoachMark extends CoachMark {
 
-    private final CoachMarkDimens<Float> mInternalAnchor;
+    private final float mInternalAnchorX;
+    private final float mInternalAnchorY;
+    private final float mInternalAnchorWidth;
+    private final float mInternalAnchorHeight;
+    private final int[] mAnchorLoc = new int[2];
+    private final int[] mPopupOrigin = new int[2];
     
     protected InternallyAnchoredCoachMark(InternallyAnchoredCoachMarkBuilder builder) {
         super(builder);
-        mInternalAnchor = builder.internalAnchor;
+        mInternalAnchorX = builder.internalAnchor.x;
+        mInternalAnchorY = builder.internalAnchor.y;
+        mInternalAnchorWidth = builder.internalAnchor.width;
+        mInternalAnchorHeight = builder.internalAnchor.height;
     }
 
     @Override
-    protected CoachMarkDimens<Integer> getAnchorDimens() {
-        int[] anchorLoc = new int[2];
-        int[] tokenViewLoc = new int[2];
-        mAnchor.getLocationOnScreen(anchorLoc);
+    protected void getAnchorDimens(MutableCoachMarkDimens outAnchorDimens) {
+        mAnchor.getLocationOnScreen(mAnchorLoc);
+        getPopupOrigin(mPopupOrigin);
         
+        CoachMarkGeometry.getInternalAnchorDimens(
+                mAnchorLoc[0] - mPopupOrigin[0], mAnchorLoc[1] - mPopupOrigin[1],
+                mAnchor.getMeasuredWidth(), mAnchor.getMeasuredHeight(),
+                mInternalAnchorX, mInternalAnchorY,
+                mInternalAnchorWidth, mInternalAnchorHeight,
+                outAnchorDimens);
+    }
+
+    /**
+     * Popups are positioned relative to the top of the token view's window,
+     * rather than the top of the screen, if the token view is not the root of
+     * its window
+     */
+    @Override
+    protected void getPopupOrigin(int[] outOrigin) {
         // Workaround for SK-4652 - should be revisited when this is fixed
         View rootView = mTokenView.getRootView();
         if(rootView != mTokenView) {
-            rootView.getLocationOnScreen(tokenViewLoc);
-            anchorLoc[1] -= tokenViewLoc[1];
+            rootView.getLocationOnScreen(outOrigin);
+        } else {
+            outOrigin[1] = 0;
         }
-        
-        final int width = (int) (mAnchor.getMeasuredWidth() * mInternalAnchor.width);
-        final int height = (int) (mAnchor.getMeasuredHeight() * mInternalAnchor.height);
-        final int x = (int) (anchorLoc[0] + mInternalAnchor.x * mAnchor.getMeasuredWidth());
-        final int y = (int) (anchorLoc[1] + mInternalAnchor.y * mAnchor.getMeasuredHeight());
-        
-        return new CoachMarkDimens<Integer>(x, y, width, height);
+        outOrigin[0] = 0;
     }
 
     public abstract static class InternallyAnchoredCoachMarkBuilder extends CoachMarkBuilder {
@@ -1,7 +1,6 @@
 package com.swiftkey.cornedbeef;
 
 import android.content.Context;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
@@ -20,8 +19,8 @@ public class LayeredCoachMark extends InternallyAnchoredCoachMark {
 
     @Override
     protected View createContentView(View content) {
-        final LinearLayout container = (LinearLayout) LayoutInflater.from(mContext)
-                .inflate(R.layout.layered_coach_mark, null);
+        final LinearLayout container =
+                (LinearLayout) inflateCoachMarkLayout(R.layout.layered_coach_mark);
         LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
                 LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.MATCH_PARENT);
 
@@ -35,18 +34,24 @@ public class LayeredCoachMark extends InternallyAnchoredCoachMark {
                 contentView,
                 ViewGroup.LayoutParams.MATCH_PARENT,
                 ViewGroup.LayoutParams.MATCH_PARENT);
-        popup.setTouchable(true);
         return popup;
     }
 
     @Override
-    protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
-        return anchorDimens;
+    protected void onRecycle() {
+        ((ViewGroup) getContentView()).removeAllViews();
     }
 
     @Override
-    protected void updateView(CoachMarkDimens<Integer> popupDimens, CoachMarkDimens<Integer> anchorDimens) {
-        mPopup.update(popupDimens.x, popupDimens.y, popupDimens.width, popupDimens.height);
+    protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+            MutableCoachMarkDimens outPopupDimens) {
+        outPopupDimens.set(anchorDimens);
+    }
+
+    @Override
+    protected void updateView(MutableCoachMarkDimens popupDimens,
+            MutableCoachMarkDimens anchorDimens) {
+        // Nothing to update - the popup simply covers the anchor
     }
 
     public static class LayeredCoachMarkBuilder extends InternallyAnchoredCoachMarkBuilder {
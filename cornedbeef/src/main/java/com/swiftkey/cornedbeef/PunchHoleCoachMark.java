@@ -1,16 +1,16 @@
 package com.swiftkey.cornedbeef;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.Configuration;
 import android.os.Build;
-import android.util.TypedValue;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.widget.LinearLayout;
 import android.widget.PopupWindow;
@@ -20,15 +20,38 @@ import androidx.annotation.LayoutRes;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
 
 /**
  * The coach mark for a "punch hole" to present a transparent circle onto the given view.
+ *
+ * Several target views can be given, in which case a hole is punched for each
+ * of them in the same overlay, so spotlighting several views still only needs
+ * one window and one draw of the overlay. The horizontal translation animation
+ * only moves the hole over the first target.
  */
 public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
 
+    /**
+     * Interface used to allow the creator of a coach mark with several target
+     * views to find out which of them was clicked.
+     */
+    public interface OnTargetClickListener {
+        /**
+         * This method will be invoked when the punch hole over one of the
+         * target views is clicked.
+         *
+         * @param targetView the target view which was clicked
+         * @param index the index of the target view, in the order they were added
+         */
+        void onTargetClick(View targetView, int index);
+    }
+
     @IntDef({POSITION_CONTENT_AUTOMATICALLY, POSITION_CONTENT_ABOVE, POSITION_CONTENT_BELOW})
     @Retention(RetentionPolicy.SOURCE)
     public @interface PunchMarkContentPosition {}
@@ -47,51 +70,102 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
      */
     public static final int POSITION_CONTENT_BELOW = 2;
 
-    private final float mGap;
+    // How much bigger the punch hole gets at the peak of each pulse
+    private static final float PULSE_SCALE = 1.1f;
+
     private final long mHorizontalTranslationDuration;
+    private final long mGrowInDuration;
+    private final long mPulseDuration;
+    private final long mRetargetDuration;
     private final int mContentPosition;
     private final int mPunchHolePadding;
-
-    private final View mTargetView;
+    private final int mPunchHoleShape;
+    private final int mPunchHoleCornerRadius;
+
+    private View[] mTargetViews;
+    // The first target view, which the horizontal translation moves over
+    private View mTargetView;
+    private final View.OnClickListener mTargetClickListener;
+    private final OnTargetClickListener mTargetIndexClickListener;
+    private final View.OnClickListener mGlobalClickListener;
+    private final int mOverlayColor;
+    private final int mContentWidth;
+    private final int mContentHeight;
     private final int[] mTargetViewLoc = new int[2];
     private final int[] mAnchorViewLoc = new int[2];
+    // The location and size of each target view when the holes were last set,
+    // as x, y, width and height
+    private int[] mLastTargetViewBounds;
+    private boolean mTargetsChanged;
     private float mRelCircleRadius;
 
+    // Where each hole should be, relative to the anchor
+    private int[] mHoleCenterX;
+    private int[] mHoleCenterY;
+    private float[] mHoleHalfWidth;
+    private float[] mHoleHalfHeight;
+
+    // Where each hole was when the coach mark was retargeted, and how far the
+    // holes have moved from there (1 when they aren't moving)
+    private int mMorphFromCount;
+    private int[] mMorphFromCenterX = new int[0];
+    private int[] mMorphFromCenterY = new int[0];
+    private float[] mMorphFromHalfWidth = new float[0];
+    private float[] mMorphFromHalfHeight = new float[0];
+    private float mMorphFraction = 1f;
+
     private PunchHoleView mPunchHoleView;
     private View mPunchHoleContent;
     private Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
     private AnimatorSet mHorizontalAnimators;
+    private AnimatorSet mScaleAnimators;
+    private ValueAnimator mMorphAnimator;
 
     protected PunchHoleCoachMark(PunchHoleCoachMarkBuilder builder) {
         super(builder);
 
-        mGap = mContext.getResources().getDimension(R.dimen.punchhole_coach_mark_gap);
-
-        mTargetView = builder.targetView;
+        setTargetViews(builder.targetViews.toArray(new View[builder.targetViews.size()]));
 
-        mPunchHoleView.setOnTargetClickListener(builder.targetClickListener);
-        mPunchHoleView.setOnGlobalClickListener(builder.globalClickListener);
-        mPunchHoleView.setBackgroundColor(builder.overlayColor);
-
-        mPunchHoleContent.setLayoutParams(
-                new LinearLayout.LayoutParams(builder.contentWidth, builder.contentHeight));
+        mTargetClickListener = builder.targetClickListener;
+        mTargetIndexClickListener = builder.targetIndexClickListener;
+        mGlobalClickListener = builder.globalClickListener;
+        mOverlayColor = builder.overlayColor;
+        mContentWidth = builder.contentWidth;
+        mContentHeight = builder.contentHeight;
 
         mHorizontalTranslationDuration = builder.horizontalAnimationDuration;
+        mGrowInDuration = builder.growInDuration;
+        mPulseDuration = builder.pulseDuration;
+        mRetargetDuration = builder.retargetDuration;
 
         mContentPosition = builder.contentPositioning;
 
-        mPunchHolePadding = (int) TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP,
-                builder.punchHolePadding,
-                mContext.getResources().getDisplayMetrics());
+        mPunchHolePadding = mStyle.dipToPixels(builder.punchHolePadding);
+        mPunchHoleShape = builder.punchHoleShape;
+        mPunchHoleCornerRadius = mStyle.dipToPixels(builder.punchHoleCornerRadius);
     }
 
     @Override
     protected View createContentView(View content) {
-        final PunchHoleView view = (PunchHoleView) LayoutInflater.from(mContext)
-                .inflate(R.layout.punchhole_coach_mark, null);
-
-        view.addView(content);
+        final PunchHoleView view =
+                (PunchHoleView) inflateCoachMarkLayout(R.layout.punchhole_coach_mark);
+
+        view.addView(content, new LinearLayout.LayoutParams(mContentWidth, mContentHeight));
+        view.setOnTargetClickListener(mTargetClickListener);
+        if (mTargetIndexClickListener != null) {
+            view.setOnHoleClickListener(new PunchHoleView.OnHoleClickListener() {
+                @Override
+                public void onHoleClick(PunchHoleView punchHoleView, int index) {
+                    mTargetIndexClickListener.onTargetClick(mTargetViews[index], index);
+                }
+            });
+        }
+        view.setOnGlobalClickListener(mGlobalClickListener);
+        view.setOverlayColor(mOverlayColor);
+        view.setMetrics(mMetrics);
+        final int horizontalPadding = mStyle.getPunchHoleHorizontalPadding();
+        final int verticalPadding = mStyle.getPunchHoleVerticalPadding();
+        view.setPadding(horizontalPadding, verticalPadding, horizontalPadding, verticalPadding);
 
         mPunchHoleView = view;
         mPunchHoleContent = content;
@@ -100,69 +174,310 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
     }
 
     @Override
-    protected PopupWindow createNewPopupWindow(View contentView) {
-        PopupWindow popup = new PopupWindow(contentView, WRAP_CONTENT, WRAP_CONTENT);
-        popup.setTouchable(true);
-        return popup;
+    public void dismiss() {
+        // The pulse animation would otherwise run forever
+        cancelAnimations();
+        super.dismiss();
+    }
+
+    @Override
+    protected void onRecycle() {
+        cancelAnimations();
+        mPunchHoleContent.setTranslationY(0);
+        mPunchHoleView.removeAllViews();
+        mPunchHoleView.reset();
     }
 
     @Override
-    protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
-        return anchorDimens;
+    protected PopupWindow createNewPopupWindow(View contentView) {
+        return new PopupWindow(contentView, WRAP_CONTENT, WRAP_CONTENT);
     }
 
     @Override
-    protected void updateView(CoachMarkDimens<Integer> popupDimens,  CoachMarkDimens<Integer> anchorDimens) {
-        mPopup.update(popupDimens.x, popupDimens.y, popupDimens.width, popupDimens.height);
+    protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+            MutableCoachMarkDimens outPopupDimens) {
+        outPopupDimens.set(anchorDimens);
+    }
 
-        mTargetView.getLocationOnScreen(mTargetViewLoc);
+    @Override
+    protected void updateView(MutableCoachMarkDimens popupDimens,
+            MutableCoachMarkDimens anchorDimens) {
         mAnchor.getLocationOnScreen(mAnchorViewLoc);
-        mRelCircleRadius = Math.max(((mTargetView.getHeight() + mGap) / 2) + mPunchHolePadding, 0f);
-
-        // If the coachmark has an horizontal translation animation, draw the
-        // circle on the start of the target view (it will move to the end).
-        // However, if the width of the target view is smaller than the diameter
-        // of the punch hole, just center the circle (no point in animating).
-        final int startOffsetX = hasHorizontalTranslation()
-                ?  isRtlConfig()
-                        ? mTargetViewLoc[0] + mTargetView.getWidth() - (int) mRelCircleRadius
-                        : mTargetViewLoc[0] + (int) mRelCircleRadius
-                : (mTargetView.getWidth() / 2);
-        final int relCircleX = mTargetViewLoc[0] - mAnchorViewLoc[0] + startOffsetX;
-        final int relCircleY = mTargetViewLoc[1] - mAnchorViewLoc[1] + (mTargetView.getHeight() / 2);
-
-        if (!mPunchHoleView.setCircle(relCircleX, relCircleY, mRelCircleRadius)) {
+        final float gap = mStyle.getPunchHoleGap();
+        final boolean rtl = mStyle.isRtl();
+
+        int holesTop = Integer.MAX_VALUE;
+        int holesBottom = Integer.MIN_VALUE;
+        int upperPadding = 0;
+        int lowerPadding = 0;
+        for (int i = 0; i < mTargetViews.length; i++) {
+            final View targetView = mTargetViews[i];
+            targetView.getLocationOnScreen(mTargetViewLoc);
+            final int offset = i * 4;
+            mLastTargetViewBounds[offset] = mTargetViewLoc[0];
+            mLastTargetViewBounds[offset + 1] = mTargetViewLoc[1];
+            mLastTargetViewBounds[offset + 2] = targetView.getWidth();
+            mLastTargetViewBounds[offset + 3] = targetView.getHeight();
+            // Circles are sized by the height of the target, and the other
+            // shapes fit around the whole target
+            final float radius = CoachMarkGeometry.getPunchHoleRadius(
+                    targetView.getHeight(), gap, mPunchHolePadding);
+            final float halfWidth = mPunchHoleShape == PunchHoleView.SHAPE_CIRCLE ? radius
+                    : CoachMarkGeometry.getPunchHoleRadius(
+                            targetView.getWidth(), gap, mPunchHolePadding);
+
+            int startOffsetX = targetView.getWidth() / 2;
+            if (i == 0) {
+                mRelCircleRadius = radius;
+
+                // If the coachmark has an horizontal translation animation, draw the
+                // circle on the start of the target view (it will move to the end).
+                // However, if the width of the target view is smaller than the diameter
+                // of the punch hole, just center the circle (no point in animating).
+                if (hasHorizontalTranslation()) {
+                    startOffsetX = rtl
+                            ? mTargetViewLoc[0] + targetView.getWidth() - (int) radius
+                            : mTargetViewLoc[0] + (int) radius;
+                }
+            }
+            final int relCircleX = mTargetViewLoc[0] - mAnchorViewLoc[0] + startOffsetX;
+            final int relCircleY = mTargetViewLoc[1] - mAnchorViewLoc[1] + (targetView.getHeight() / 2);
+
+            mHoleCenterX[i] = relCircleX;
+            mHoleCenterY[i] = relCircleY;
+            mHoleHalfWidth[i] = halfWidth;
+            mHoleHalfHeight[i] = radius;
+
+            holesTop = Math.min(holesTop, relCircleY - (int) radius);
+            holesBottom = Math.max(holesBottom, relCircleY + (int) radius);
+            upperPadding = Math.max(upperPadding,
+                    CoachMarkGeometry.getPaddingBelowPunchHole(relCircleY, radius));
+            lowerPadding = Math.max(lowerPadding, CoachMarkGeometry.getPaddingAbovePunchHole(
+                    relCircleY, radius, mAnchor.getHeight()));
+        }
+
+        final boolean targetsChanged = mTargetsChanged;
+        mTargetsChanged = false;
+        if (!applyHoles() && !targetsChanged) {
             return;
         }
 
-        if (hasHorizontalTranslation()) {
+        if (hasHorizontalTranslation() && !isMorphing()) {
             animateHorizontalTranslation();
         }
+        animateScale();
 
-        // Calculating the proper padding of layout
+        // Calculating the proper padding of layout, keeping the content clear of all the holes
         int positioning = mContentPosition;
 
         if (mContentPosition == POSITION_CONTENT_AUTOMATICALLY) {
-            positioning = relCircleY < (mAnchor.getHeight() / 2) ?
-                    POSITION_CONTENT_BELOW : POSITION_CONTENT_ABOVE;
+            positioning = CoachMarkGeometry.shouldShowContentBelowPunchHole(
+                    (holesTop + holesBottom) / 2, mAnchor.getHeight())
+                    ? POSITION_CONTENT_BELOW : POSITION_CONTENT_ABOVE;
         }
 
-        int upperPadding = 0;
-        int lowerPadding = 0;
-
         if (positioning == POSITION_CONTENT_BELOW) {
-            // Circle in upper side
-            upperPadding = (int) (relCircleY + mRelCircleRadius);
+            // Holes in upper side
+            lowerPadding = 0;
+        } else {
+            // Holes in lower side
+            upperPadding = 0;
+        }
+
+        if (mContentHeight == MATCH_PARENT) {
+            // The content is sized by the space left clear of the holes, so it
+            // has to be laid out again
+            final int horizontalPadding = mStyle.getPunchHoleHorizontalPadding();
+            final int verticalPadding = mStyle.getPunchHoleVerticalPadding();
+            mPunchHoleView.setPadding(
+                    horizontalPadding, verticalPadding + upperPadding,
+                    horizontalPadding, verticalPadding + lowerPadding);
+        } else {
+            // The content is centred in the view, so move it to the centre of
+            // the space left clear of the holes without laying it out again
+            mPunchHoleContent.setTranslationY((upperPadding - lowerPadding) / 2f);
+        }
+    }
+
+    /**
+     * Move the punch holes to new target views. If the coach mark is showing
+     * then the holes change position, size and shape in place, on APIs
+     * Honeycomb MR1 and above, and the content is moved above or below them
+     * without showing the coach mark again.
+     *
+     * @param targetViews the new target views
+     */
+    public void retarget(View... targetViews) {
+        if (targetViews.length == 0) {
+            throw new IllegalArgumentException("A PunchHoleCoachMark needs at least one target view");
+        }
+        if (mHorizontalAnimators != null) {
+            // Sweep over the new target instead, once the holes have moved
+            mHorizontalAnimators.cancel();
+            mHorizontalAnimators = null;
+        }
+        final boolean morph = isShowing() && mRetargetDuration > 0
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1;
+        if (morph) {
+            startMorph();
+        }
+        setTargetViews(targetViews);
+        if (isShowing()) {
+            updatePosition();
+        }
+        if (morph) {
+            mMorphAnimator.start();
+        }
+    }
+
+    private void setTargetViews(View[] targetViews) {
+        mTargetViews = targetViews;
+        mTargetView = targetViews.length > 0 ? targetViews[0] : null;
+        mLastTargetViewBounds = new int[targetViews.length * 4];
+        mHoleCenterX = new int[targetViews.length];
+        mHoleCenterY = new int[targetViews.length];
+        mHoleHalfWidth = new float[targetViews.length];
+        mHoleHalfHeight = new float[targetViews.length];
+        mTargetsChanged = true;
+    }
+
+    /**
+     * Set the holes of the punch hole view, part of the way from where they
+     * were to where they should be if they are moving to new targets
+     *
+     * @return true if any of the holes changed
+     */
+    private boolean applyHoles() {
+        mPunchHoleView.setHoleCount(mTargetViews.length);
+
+        final float fraction = mMorphFraction;
+        boolean changed = false;
+        for (int i = 0; i < mTargetViews.length; i++) {
+            int centerX = mHoleCenterX[i];
+            int centerY = mHoleCenterY[i];
+            float halfWidth = mHoleHalfWidth[i];
+            float halfHeight = mHoleHalfHeight[i];
+            if (fraction < 1f) {
+                if (i < mMorphFromCount) {
+                    centerX = lerp(mMorphFromCenterX[i], centerX, fraction);
+                    centerY = lerp(mMorphFromCenterY[i], centerY, fraction);
+                    halfWidth = lerp(mMorphFromHalfWidth[i], halfWidth, fraction);
+                    halfHeight = lerp(mMorphFromHalfHeight[i], halfHeight, fraction);
+                } else {
+                    // Extra holes grow in where they will be
+                    halfWidth *= fraction;
+                    halfHeight *= fraction;
+                }
+            }
+            changed |= mPunchHoleView.setHole(i, mPunchHoleShape, centerX, centerY,
+                    halfWidth, halfHeight, mPunchHoleCornerRadius);
+        }
+        return changed;
+    }
+
+    /**
+     * Remember where the holes are drawn now, and prepare to move them from
+     * there to the new targets
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+    private void startMorph() {
+        final int count = mPunchHoleView.getHoleCount();
+        if (mMorphFromCenterX.length < count) {
+            mMorphFromCenterX = new int[count];
+            mMorphFromCenterY = new int[count];
+            mMorphFromHalfWidth = new float[count];
+            mMorphFromHalfHeight = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mMorphFromCenterX[i] = mPunchHoleView.getHoleCenterX(i);
+            mMorphFromCenterY[i] = mPunchHoleView.getHoleCenterY(i);
+            mMorphFromHalfWidth[i] = mPunchHoleView.getHoleHalfWidth(i);
+            mMorphFromHalfHeight[i] = mPunchHoleView.getHoleHalfHeight(i);
+        }
+        mMorphFromCount = count;
+
+        if (mMorphAnimator == null) {
+            mMorphAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mMorphAnimator.setDuration(mRetargetDuration);
+            mMorphAnimator.setInterpolator(INTERPOLATOR);
+            mMorphAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    mMorphFraction = animation.getAnimatedFraction();
+                    if (isShowing()) {
+                        applyHoles();
+                    }
+                }
+            });
+            mMorphAnimator.addListener(new AnimatorListenerAdapter() {
+                private boolean mCancelled;
+
+                @Override
+                public void onAnimationStart(Animator animation) {
+                    mCancelled = false;
+                }
+
+                @Override
+                public void onAnimationCancel(Animator animation) {
+                    // Leave the holes where they are
+                    mCancelled = true;
+                    mMorphFraction = 1f;
+                }
+
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    if (mCancelled) {
+                        return;
+                    }
+                    mMorphFraction = 1f;
+                    if (isShowing()) {
+                        applyHoles();
+                        if (hasHorizontalTranslation()) {
+                            animateHorizontalTranslation();
+                        }
+                    }
+                }
+            });
         } else {
-            // Circle in lower side
-            lowerPadding = mAnchor.getHeight() - (int) (relCircleY - mRelCircleRadius);
+            // Start the next morph from wherever the last one has got to
+            mMorphAnimator.cancel();
         }
+        mMorphFraction = 0f;
+    }
+
+    private boolean isMorphing() {
+        return mMorphFraction < 1f;
+    }
 
-        int horizontalPadding = (int) mContext.getResources().getDimension(R.dimen.punchhole_coach_mark_horizontal_padding);
-        int verticalPadding = (int) mContext.getResources().getDimension(R.dimen.punchhole_coach_mark_vertical_padding);
-        mPunchHoleView.setPadding(
-                horizontalPadding, verticalPadding + upperPadding,
-                horizontalPadding, verticalPadding + lowerPadding);
+    private static int lerp(int from, int to, float fraction) {
+        return from + Math.round((to - from) * fraction);
+    }
+
+    private static float lerp(float from, float to, float fraction) {
+        return from + (to - from) * fraction;
+    }
+
+    /**
+     * The target views may move within the anchor without the anchor itself
+     * moving, in which case the punch holes still need to follow them
+     */
+    @Override
+    protected boolean isViewDirty() {
+        if (mTargetsChanged) {
+            return true;
+        }
+        for (int i = 0; i < mTargetViews.length; i++) {
+            final View targetView = mTargetViews[i];
+            targetView.getLocationOnScreen(mTargetViewLoc);
+            final int offset = i * 4;
+            if (mTargetViewLoc[0] != mLastTargetViewBounds[offset]
+                    || mTargetViewLoc[1] != mLastTargetViewBounds[offset + 1]
+                    || targetView.getWidth() != mLastTargetViewBounds[offset + 2]
+                    || targetView.getHeight() != mLastTargetViewBounds[offset + 3]) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -174,15 +489,16 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     private void animateHorizontalTranslation() {
         if (hasHorizontalTranslation() && mHorizontalAnimators == null) {
-            final int leftMostPosition = mTargetViewLoc[0] + (int) mRelCircleRadius;
-            final int rightMostPosition = mTargetViewLoc[0] + mTargetView.getWidth() - (int) mRelCircleRadius;
+            final int targetX = mLastTargetViewBounds[0];
+            final int leftMostPosition = targetX + (int) mRelCircleRadius;
+            final int rightMostPosition = targetX + mTargetView.getWidth() - (int) mRelCircleRadius;
 
-            final int startX = isRtlConfig() ? rightMostPosition : leftMostPosition;
-            final int endX = isRtlConfig() ? leftMostPosition : rightMostPosition;
+            final int startX = mStyle.isRtl() ? rightMostPosition : leftMostPosition;
+            final int endX = mStyle.isRtl() ? leftMostPosition : rightMostPosition;
 
             final ValueAnimator[] horizontalAnimations = new ValueAnimator[]{
-                    ObjectAnimator.ofInt(mPunchHoleView, "circleCenterX", startX, endX),
-                    ObjectAnimator.ofInt(mPunchHoleView, "circleCenterX", endX, startX)
+                    animateCircleCenterX(startX, endX),
+                    animateCircleCenterX(endX, startX)
             };
 
             mHorizontalAnimators = new AnimatorSet();
@@ -195,8 +511,88 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
         }
     }
 
+    /**
+     * Grow the punch hole in from nothing and/or keep it pulsing, if either of
+     * these animations was requested
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void animateScale() {
+        if (mScaleAnimators != null || (mGrowInDuration <= 0 && mPulseDuration <= 0)) {
+            return;
+        }
+        mScaleAnimators = new AnimatorSet();
+
+        final ValueAnimator growIn = animateHoleScale(0f, 1f);
+        growIn.setDuration(mGrowInDuration);
+        growIn.setInterpolator(new DecelerateInterpolator());
+
+        if (mPulseDuration > 0) {
+            // Each pulse grows the hole and then shrinks it back
+            final ValueAnimator pulse = animateHoleScale(1f, PULSE_SCALE);
+            pulse.setDuration(mPulseDuration / 2);
+            pulse.setInterpolator(INTERPOLATOR);
+            pulse.setRepeatCount(ValueAnimator.INFINITE);
+            pulse.setRepeatMode(ValueAnimator.REVERSE);
+
+            if (mGrowInDuration > 0) {
+                mScaleAnimators.playSequentially(growIn, pulse);
+            } else {
+                mScaleAnimators.play(pulse);
+            }
+        } else {
+            mScaleAnimators.play(growIn);
+        }
+        mScaleAnimators.start();
+    }
+
+    /**
+     * Animate the x coordinate of the punch hole through an {@link android.util.IntProperty}
+     * where it's available, and otherwise by setting it from the animated fraction
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private ValueAnimator animateCircleCenterX(int fromX, int toX) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return ObjectAnimator.ofInt(mPunchHoleView,
+                    PunchHoleView.AnimationProperties.CIRCLE_CENTER_X, fromX, toX);
+        }
+        final ValueAnimator animator = ValueAnimator.ofInt(fromX, toX);
+        animator.addUpdateListener(
+                new PunchHoleView.CircleCenterXUpdater(mPunchHoleView, fromX, toX));
+        return animator;
+    }
+
+    /**
+     * Animate the scale of the punch hole through a {@link android.util.FloatProperty}
+     * where it's available, and otherwise by setting it from the animated fraction
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private ValueAnimator animateHoleScale(float fromScale, float toScale) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return ObjectAnimator.ofFloat(mPunchHoleView,
+                    PunchHoleView.AnimationProperties.HOLE_SCALE, fromScale, toScale);
+        }
+        final ValueAnimator animator = ValueAnimator.ofFloat(fromScale, toScale);
+        animator.addUpdateListener(
+                new PunchHoleView.HoleScaleUpdater(mPunchHoleView, fromScale, toScale));
+        return animator;
+    }
+
+    private void cancelAnimations() {
+        if (mHorizontalAnimators != null) {
+            mHorizontalAnimators.cancel();
+        }
+        if (mScaleAnimators != null) {
+            mScaleAnimators.cancel();
+        }
+        if (mMorphAnimator != null) {
+            mMorphAnimator.cancel();
+        }
+    }
+
     /**
      * Check if the punch hole should have a horizontal animation. Checks:
+     *  - the punch hole is a circle (the other shapes already cover the
+     *      whole target view).
      *  - the width of the target view is bigger than the diameter of the circle
      *      (otherwise there's no space to perform the animation).
      *  - the duration is greater than 0
@@ -204,31 +600,24 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
      * @return  whether to display the animation
      */
     private boolean hasHorizontalTranslation() {
-        return mHorizontalTranslationDuration > 0 && mTargetView.getWidth() > 2 * mRelCircleRadius;
-    }
-
-    /**
-     * For APIs above JELLY_BEAN_MR1, we can check if the locale of a device is
-     * LTR or RTL. Below that API, we assume it's LTR.
-     * We need this to show the horizontal translation from start to end
-     * (from left to right in LTR and from right to left in LTR), if possible.
-     * @return  whether the device has a RTL locale
-     */
-    private boolean isRtlConfig() {
-        final Configuration config = mAnchor.getResources().getConfiguration();
-        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
-                && config.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+        return mHorizontalTranslationDuration > 0
+                && mPunchHoleShape == PunchHoleView.SHAPE_CIRCLE && mTargetView != null
+                && mTargetView.getWidth() > 2 * mRelCircleRadius;
     }
 
     public static class PunchHoleCoachMarkBuilder extends InternallyAnchoredCoachMarkBuilder {
 
-        protected View targetView;
+        protected final List<View> targetViews = new ArrayList<>();
         protected int overlayColor = 0xBF000000;
 
         protected View.OnClickListener targetClickListener;
+        protected OnTargetClickListener targetIndexClickListener;
         protected View.OnClickListener globalClickListener;
 
         protected long horizontalAnimationDuration;
+        protected long growInDuration;
+        protected long pulseDuration;
+        protected long retargetDuration = 300;
         private int contentPositioning = POSITION_CONTENT_AUTOMATICALLY;
         /**
          * Default layout parameters for {@link LinearLayout}, from which {@link PunchHoleView}
@@ -240,6 +629,8 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
         private int contentHeight = WRAP_CONTENT;
 
         private int punchHolePadding = 0;
+        private int punchHoleShape = PunchHoleView.SHAPE_CIRCLE;
+        private int punchHoleCornerRadius = 8;
 
         public PunchHoleCoachMarkBuilder(Context context, View anchor, String message) {
             super(context, anchor, message);
@@ -259,12 +650,36 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
          * @param view
          */
         public PunchHoleCoachMarkBuilder setTargetView(View view) {
-            this.targetView = view;
+            this.targetViews.clear();
+            this.targetViews.add(view);
+            return this;
+        }
+
+        /**
+         * Set the target views where the "punch holes" will display, replacing
+         * any which were set before. The holes should not overlap.
+         *
+         * @param views
+         */
+        public PunchHoleCoachMarkBuilder setTargetViews(View... views) {
+            this.targetViews.clear();
+            Collections.addAll(this.targetViews, views);
             return this;
         }
 
         /**
-         * Set a listener to be called when the target view is clicked.
+         * Add another target view where a "punch hole" will display. The holes
+         * should not overlap.
+         *
+         * @param view
+         */
+        public PunchHoleCoachMarkBuilder addTargetView(View view) {
+            this.targetViews.add(view);
+            return this;
+        }
+
+        /**
+         * Set a listener to be called when any of the target views is clicked.
          *
          * @param listener
          */
@@ -273,6 +688,17 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
             return this;
         }
 
+        /**
+         * Set a listener to be called with the target view which is clicked,
+         * as well as any listener set by {@link #setOnTargetClickListener(View.OnClickListener)}.
+         *
+         * @param listener
+         */
+        public PunchHoleCoachMarkBuilder setOnTargetClickListener(OnTargetClickListener listener) {
+            this.targetIndexClickListener = listener;
+            return this;
+        }
+
         /**
          * Set a listener to be called when the coach mark is clicked.
          *
@@ -330,6 +756,58 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
             return this;
         }
 
+        /**
+         * Setting this to a non-zero value will animate the punch hole growing
+         * from nothing to its full size when the coach mark is shown, on APIs
+         * Honeycomb and above
+         *
+         * @param growInDuration the duration in milliseconds the animation should last for
+         */
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        public PunchHoleCoachMarkBuilder setGrowInDuration(long growInDuration) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+                return this;
+            }
+
+            this.growInDuration = growInDuration;
+            return this;
+        }
+
+        /**
+         * Setting this to a non-zero value will make the punch hole repeatedly
+         * grow slightly and shrink back for as long as the coach mark is shown,
+         * on APIs Honeycomb and above
+         *
+         * @param pulseDuration the duration in milliseconds of each pulse
+         */
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        public PunchHoleCoachMarkBuilder setPulseDuration(long pulseDuration) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+                return this;
+            }
+
+            this.pulseDuration = pulseDuration;
+            return this;
+        }
+
+        /**
+         * Set how long the punch holes take to move to new target views when
+         * the coach mark is retargeted, on APIs Honeycomb MR1 and above. Setting
+         * this to 0 moves them straight away.
+         *
+         * @param retargetDuration the duration in milliseconds - defaults to 300
+         * @see PunchHoleCoachMark#retarget(View...)
+         */
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+        public PunchHoleCoachMarkBuilder setRetargetDuration(long retargetDuration) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+                return this;
+            }
+
+            this.retargetDuration = retargetDuration;
+            return this;
+        }
+
         /**
          * Set the padding for the punch hole around the anchor view in density-independent
          * pixels (dip).
@@ -344,6 +822,31 @@ public class PunchHoleCoachMark extends InternallyAnchoredCoachMark {
             return this;
         }
 
+        /**
+         * Set the shape of the punch hole. A circle is sized to the height of
+         * the target view, whereas an oval or rounded rectangle fits around the
+         * whole of it, so wide targets can be revealed without a horizontal
+         * translation.
+         *
+         * @param punchHoleShape the shape - defaults to {@link PunchHoleView#SHAPE_CIRCLE}
+         */
+        public PunchHoleCoachMarkBuilder setPunchHoleShape(
+                @PunchHoleView.HoleShape final int punchHoleShape) {
+            this.punchHoleShape = punchHoleShape;
+            return this;
+        }
+
+        /**
+         * Set the radius of the corners of a {@link PunchHoleView#SHAPE_ROUNDED_RECT}
+         * punch hole in density-independent pixels (dip).
+         *
+         * @param punchHoleCornerRadius the corner radius in dip - defaults to 8
+         */
+        public PunchHoleCoachMarkBuilder setPunchHoleCornerRadius(final int punchHoleCornerRadius) {
+            this.punchHoleCornerRadius = punchHoleCornerRadius;
+            return this;
+        }
+
         @Override
         public CoachMark build() {
             return new PunchHoleCoachMark(this);
@@ -1,44 +1,187 @@
 package com.swiftkey.cornedbeef;
 
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.Path;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
 import android.util.AttributeSet;
+import android.util.FloatProperty;
+import android.util.IntProperty;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.LinearLayout;
 
+import androidx.annotation.ColorInt;
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 /**
- * The helper view for the punch hole and listeners.
+ * The helper view for the punch holes and listeners.
+ *
+ * The overlay is drawn as plain rectangles around the bounds of the holes,
+ * and a path covering just those bounds with the holes cut out of it, rather
+ * than by clearing the holes out of a background. Clearing pixels only works
+ * as intended in an offscreen layer (or in a window of its own), whereas
+ * filling the path can be drawn straight into any canvas. Keeping the path to
+ * the bounds of the holes means that the mask which is rendered for it is no
+ * bigger than they are, however big the view is. The holes are cut out with
+ * the even-odd rule, so they should not overlap.
+ *
+ * The path of each hole's shape is cached, centred on the origin, and is only
+ * rebuilt when the hole changes shape or size. Moving or scaling the holes
+ * just places the cached paths again, so animating them doesn't allocate.
  */
 public class PunchHoleView extends LinearLayout {
 
-    // Helpers to punch a hole
-    private final Paint mPaint;
+    @IntDef({SHAPE_CIRCLE, SHAPE_OVAL, SHAPE_ROUNDED_RECT})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface HoleShape {}
+
+    /**
+     * A circular hole
+     */
+    public static final int SHAPE_CIRCLE = 0;
+    /**
+     * An oval hole, filling the bounds of the hole
+     */
+    public static final int SHAPE_OVAL = 1;
+    /**
+     * A rectangular hole with rounded corners, filling the bounds of the hole
+     */
+    public static final int SHAPE_ROUNDED_RECT = 2;
+
+    /**
+     * Interface used to allow the creator of a punch hole view to find out
+     * which of its holes was clicked.
+     */
+    public interface OnHoleClickListener {
+        /**
+         * This method will be invoked when one of the punch holes is clicked.
+         *
+         * @param view the punch hole view
+         * @param index the index of the hole which was clicked
+         */
+        void onHoleClick(PunchHoleView view, int index);
+    }
+
+    // Helpers to draw the overlay around the holes
+    private final Paint mOverlayPaint;
+    private final Path mOverlayPath;
+    private boolean mOverlayPathDirty = true;
+    // The bounds of the visible holes within the view, which the path covers
+    final Rect mOverlayPathBounds = new Rect();
 
-    private int mCircleCenterX;
-    private int mCircleCenterY;
-    private float mCircleRadius;
-    private Rect mRect; // Contains target view's rect
+    // The holes, stored in parallel arrays which only grow
+    private int mHoleCount;
+    private int[] mHoleShape = new int[1];
+    private int[] mHoleCenterX = new int[1];
+    private int[] mHoleCenterY = new int[1];
+    private float[] mHoleHalfWidth = new float[1];
+    private float[] mHoleHalfHeight = new float[1];
+    private float[] mHoleCornerRadius = new float[1];
+    // Where each hole was set, which the animations don't move
+    private int[] mHoleHitCenterX = new int[1];
+    private int[] mHoleHitCenterY = new int[1];
+    // The shape of each hole, centred on the origin
+    private Path[] mHolePaths = new Path[1];
+    private boolean[] mHolePathDirty = new boolean[1];
+    private float mHoleScale = 1f;
+    private final Matrix mHoleMatrix = new Matrix();
+    private final RectF mHoleRect = new RectF();
+    private final Rect mDirtyRect = new Rect();
 
     private View.OnClickListener mPunchHoleClickListener;
+    private OnHoleClickListener mHoleClickListener;
     private View.OnClickListener mGlobalClickListener;
+    private CoachMarkMetrics mMetrics;
 
     public PunchHoleView(Context context, AttributeSet attrs) {
         super(context, attrs);
 
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
-        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+        mOverlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mOverlayPaint.setColor(CoachMarkStyle.getInstance(context).getOverlayColor());
+        mOverlayPath = new Path();
+        // The holes are inside the path's bounds, so filling both with even-odd leaves them empty
+        mOverlayPath.setFillType(Path.FillType.EVEN_ODD);
+
+        // The overlay is drawn by this view rather than by a background
+        setWillNotDraw(false);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mOverlayPathDirty = true;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        // Punch a hole to target (x, y) position with given radius.
-        canvas.drawCircle(mCircleCenterX, mCircleCenterY, mCircleRadius, mPaint);
+        final int width = getWidth();
+        final int height = getHeight();
+        final Rect bounds = mOverlayPathBounds;
+        if (mOverlayPathDirty) {
+            mOverlayPathDirty = false;
+            bounds.setEmpty();
+            for (int i = 0; i < mHoleCount; i++) {
+                unionHoleBounds(i, bounds);
+            }
+            if (!bounds.intersect(0, 0, width, height)) {
+                bounds.setEmpty();
+            }
+
+            mOverlayPath.rewind();
+            if (!bounds.isEmpty()) {
+                mOverlayPath.addRect(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                        Path.Direction.CW);
+                for (int i = 0; i < mHoleCount; i++) {
+                    if (isHoleVisible(i)) {
+                        // Punch a hole to target (x, y) position with its cached shape.
+                        mHoleMatrix.setScale(mHoleScale, mHoleScale);
+                        mHoleMatrix.postTranslate(mHoleCenterX[i], mHoleCenterY[i]);
+                        mOverlayPath.addPath(getHolePath(i), mHoleMatrix);
+                    }
+                }
+            }
+        }
+
+        if (bounds.isEmpty()) {
+            canvas.drawRect(0, 0, width, height, mOverlayPaint);
+            return;
+        }
+        // The bounds are whole pixels, so the rectangles meet the path without a seam
+        canvas.drawRect(0, 0, width, bounds.top, mOverlayPaint);
+        canvas.drawRect(0, bounds.bottom, width, height, mOverlayPaint);
+        canvas.drawRect(0, bounds.top, bounds.left, bounds.bottom, mOverlayPaint);
+        canvas.drawRect(bounds.right, bounds.top, width, bounds.bottom, mOverlayPaint);
+        canvas.drawPath(mOverlayPath, mOverlayPaint);
+    }
+
+    /**
+     * Set the color of the overlay around the punch hole
+     *
+     * @param color the overlay color
+     */
+    public void setOverlayColor(@ColorInt int color) {
+        if (mOverlayPaint.getColor() != color) {
+            mOverlayPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * Get the color of the overlay around the punch hole
+     */
+    @ColorInt
+    public int getOverlayColor() {
+        return mOverlayPaint.getColor();
     }
 
     @Override
@@ -47,11 +190,18 @@ public class PunchHoleView extends LinearLayout {
             case MotionEvent.ACTION_DOWN:
                 return true;
             case MotionEvent.ACTION_UP:
-                if (mRect.contains((int) event.getX(), (int) event.getY())) {
+                final int index = getHoleIndexAt((int) event.getX(), (int) event.getY());
+                if (index >= 0) {
+                    boolean handled = false;
+                    if (mHoleClickListener != null) {
+                        mHoleClickListener.onHoleClick(this, index);
+                        handled = true;
+                    }
                     if (mPunchHoleClickListener != null) {
                         mPunchHoleClickListener.onClick(this);
-                        return true;
+                        handled = true;
                     }
+                    return handled;
                 } else {
                     if (mGlobalClickListener != null) {
                         mGlobalClickListener.onClick(this);
@@ -64,36 +214,197 @@ public class PunchHoleView extends LinearLayout {
         }
     }
 
+    /**
+     * Find the punch hole whose shape contains the given point, at the size
+     * and position it was set to
+     *
+     * @return the index of the hole, or -1 if the point is not in any of them
+     */
+    public int getHoleIndexAt(int x, int y) {
+        for (int i = mHoleCount - 1; i >= 0; i--) {
+            if (isInHole(i, Math.abs(x - mHoleHitCenterX[i]), Math.abs(y - mHoleHitCenterY[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
     /**
-     * Set the punch hole's coordinates and radius
+     * Set the number of punch holes. New holes are empty until they are set
+     * with {@link #setHole(int, int, int, float)}.
      *
+     * @param count the number of holes
+     */
+    public void setHoleCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The number of punch holes must not be negative");
+        }
+        if (count == mHoleCount) {
+            return;
+        }
+
+        if (count > mHoleShape.length) {
+            mHoleShape = copyOf(mHoleShape, count);
+            mHoleCenterX = copyOf(mHoleCenterX, count);
+            mHoleCenterY = copyOf(mHoleCenterY, count);
+            mHoleHalfWidth = copyOf(mHoleHalfWidth, count);
+            mHoleHalfHeight = copyOf(mHoleHalfHeight, count);
+            mHoleCornerRadius = copyOf(mHoleCornerRadius, count);
+            mHoleHitCenterX = copyOf(mHoleHitCenterX, count);
+            mHoleHitCenterY = copyOf(mHoleHitCenterY, count);
+            final Path[] holePaths = new Path[count];
+            System.arraycopy(mHolePaths, 0, holePaths, 0, mHolePaths.length);
+            mHolePaths = holePaths;
+            final boolean[] holePathDirty = new boolean[count];
+            System.arraycopy(mHolePathDirty, 0, holePathDirty, 0, mHolePathDirty.length);
+            mHolePathDirty = holePathDirty;
+        }
+
+        mDirtyRect.setEmpty();
+        for (int i = count; i < mHoleCount; i++) {
+            unionHoleBounds(i, mDirtyRect);
+        }
+        for (int i = mHoleCount; i < count; i++) {
+            mHoleShape[i] = SHAPE_CIRCLE;
+            mHoleCenterX[i] = 0;
+            mHoleCenterY[i] = 0;
+            mHoleHalfWidth[i] = 0;
+            mHoleHalfHeight[i] = 0;
+            mHoleCornerRadius[i] = 0;
+            mHoleHitCenterX[i] = 0;
+            mHoleHitCenterY[i] = 0;
+            mHolePathDirty[i] = true;
+        }
+        mHoleCount = count;
+
+        if (!mDirtyRect.isEmpty()) {
+            invalidateDirtyRect();
+        }
+    }
+
+    /**
+     * Get the number of punch holes
+     */
+    public int getHoleCount() {
+        return mHoleCount;
+    }
+
+    /**
+     * Set the coordinates and radius of one of the punch holes, making it a
+     * circle
+     *
+     * @param index the index of the hole, which must be less than the hole count
      * @param centerX circle's x coordinate
      * @param centerY circle's y coordinate
      * @param radius circle's radius
      * @return true if value is changed
      */
-    public boolean setCircle(int centerX, int centerY, float radius) {
-        boolean changed = false;
-        changed |= setCircleCenterX(centerX);
-        changed |= setCircleCenterY(centerY);
-        changed |= setCircleRadius(radius);
+    public boolean setHole(int index, int centerX, int centerY, float radius) {
+        return setHole(index, SHAPE_CIRCLE, centerX, centerY, radius, radius, 0f);
+    }
 
-        if (!changed) {
+    /**
+     * Set the shape, coordinates and size of one of the punch holes
+     *
+     * @param index the index of the hole, which must be less than the hole count
+     * @param shape the shape of the hole
+     * @param centerX the x coordinate of the centre of the hole
+     * @param centerY the y coordinate of the centre of the hole
+     * @param halfWidth half of the width of the hole
+     * @param halfHeight half of the height of the hole
+     * @param cornerRadius the radius of the corners, for {@link #SHAPE_ROUNDED_RECT}
+     * @return true if value is changed
+     */
+    public boolean setHole(int index, @HoleShape int shape, int centerX, int centerY,
+            float halfWidth, float halfHeight, float cornerRadius) {
+        checkHoleIndex(index);
+        if (shape == SHAPE_CIRCLE && halfWidth != halfHeight) {
+            throw new IllegalArgumentException("A circular punch hole must be as wide as it is high");
+        }
+        if (shape != SHAPE_ROUNDED_RECT) {
+            cornerRadius = 0f;
+        }
+        final boolean sizeChanged = mHoleShape[index] != shape
+                || mHoleHalfWidth[index] != halfWidth
+                || mHoleHalfHeight[index] != halfHeight
+                || mHoleCornerRadius[index] != cornerRadius;
+        if (!sizeChanged && mHoleCenterX[index] == centerX && mHoleCenterY[index] == centerY
+                && mHoleHitCenterX[index] == centerX && mHoleHitCenterY[index] == centerY) {
             return false;
         }
 
-        mRect = new Rect(
-                centerX - (int) radius, centerY - (int) radius,
-                centerX + (int) radius, centerY + (int) radius);
+        mDirtyRect.setEmpty();
+        unionHoleBounds(index, mDirtyRect);
+        mHoleShape[index] = shape;
+        mHoleCenterX[index] = centerX;
+        mHoleCenterY[index] = centerY;
+        mHoleHalfWidth[index] = halfWidth;
+        mHoleHalfHeight[index] = halfHeight;
+        mHoleCornerRadius[index] = cornerRadius;
+        mHoleHitCenterX[index] = centerX;
+        mHoleHitCenterY[index] = centerY;
+        if (sizeChanged) {
+            mHolePathDirty[index] = true;
+        }
+        unionHoleBounds(index, mDirtyRect);
 
-        postInvalidate();
+        invalidateDirtyRect();
 
         return true;
     }
 
     /**
-     * Set the punch hole's x coordinate.
+     * Get the x coordinate of the centre of a punch hole, as it is drawn
+     */
+    public int getHoleCenterX(int index) {
+        checkHoleIndex(index);
+        return mHoleCenterX[index];
+    }
+
+    /**
+     * Get the y coordinate of the centre of a punch hole, as it is drawn
+     */
+    public int getHoleCenterY(int index) {
+        checkHoleIndex(index);
+        return mHoleCenterY[index];
+    }
+
+    /**
+     * Get half of the width of a punch hole, before it is scaled
+     */
+    public float getHoleHalfWidth(int index) {
+        checkHoleIndex(index);
+        return mHoleHalfWidth[index];
+    }
+
+    /**
+     * Get half of the height of a punch hole, before it is scaled
+     */
+    public float getHoleHalfHeight(int index) {
+        checkHoleIndex(index);
+        return mHoleHalfHeight[index];
+    }
+
+    /**
+     * Set the punch hole's coordinates and radius. If there are several holes
+     * then this sets the first of them.
+     *
+     * @param centerX circle's x coordinate
+     * @param centerY circle's y coordinate
+     * @param radius circle's radius
+     * @return true if value is changed
+     */
+    public boolean setCircle(int centerX, int centerY, float radius) {
+        if (mHoleCount == 0) {
+            setHoleCount(1);
+        }
+        return setHole(0, centerX, centerY, radius);
+    }
+
+    /**
+     * Set the punch hole's x coordinate. If there are several holes then this
+     * moves the first of them. This doesn't change the area in which the
+     * target click listener is called.
      *
      * This needs to be public to do the horizontal translation animation.
      *
@@ -101,52 +412,282 @@ public class PunchHoleView extends LinearLayout {
      * @return true if value is changed
      */
     public boolean setCircleCenterX(int centerX) {
-        if (this.mCircleCenterX != centerX) {
-            this.mCircleCenterX = centerX;
-            postInvalidate();
-            return true;
-        } else {
+        if (mHoleCount == 0) {
+            setHoleCount(1);
+        }
+        if (mHoleCenterX[0] == centerX) {
             return false;
         }
+
+        mDirtyRect.setEmpty();
+        unionHoleBounds(0, mDirtyRect);
+        mHoleCenterX[0] = centerX;
+        unionHoleBounds(0, mDirtyRect);
+
+        invalidateDirtyRect();
+
+        return true;
     }
 
     /**
-     * Set the punch hole's y coordinate
+     * Set the scale of the punch holes, relative to their sizes. This doesn't
+     * change the area in which the target click listener is called.
      *
-     * @param centerY circle's y coordinate
+     * This needs to be public to do the grow-in and pulse animations.
+     *
+     * @param scale the scale of the hole
      * @return true if value is changed
      */
-    private boolean setCircleCenterY(int centerY) {
-        if (this.mCircleCenterY != centerY) {
-            this.mCircleCenterY = centerY;
-            postInvalidate();
-            return true;
-        } else {
+    public boolean setHoleScale(float scale) {
+        if (mHoleScale == scale) {
             return false;
         }
+
+        mDirtyRect.setEmpty();
+        for (int i = 0; i < mHoleCount; i++) {
+            unionHoleBounds(i, mDirtyRect);
+        }
+        mHoleScale = scale;
+        for (int i = 0; i < mHoleCount; i++) {
+            unionHoleBounds(i, mDirtyRect);
+        }
+
+        invalidateDirtyRect();
+
+        return true;
     }
 
     /**
-     * Set the punch hole's radius
-     *
-     * @param radius circle's radius
-     * @return true if value is changed
+     * Get the scale of the punch holes, relative to their sizes
      */
-    private boolean setCircleRadius(float radius) {
-        if (this.mCircleRadius != radius) {
-            this.mCircleRadius = radius;
-            postInvalidate();
-            return true;
-        } else {
+    public float getHoleScale() {
+        return mHoleScale;
+    }
+
+    /**
+     * Clear the punch holes and listeners, so that the view can be reused by
+     * another coach mark
+     */
+    void reset() {
+        mHoleCount = 0;
+        mHoleScale = 1f;
+        mOverlayPathDirty = true;
+        mPunchHoleClickListener = null;
+        mHoleClickListener = null;
+        mGlobalClickListener = null;
+        mMetrics = null;
+        setPadding(0, 0, 0, 0);
+    }
+
+    /**
+     * Set the metrics in which to count redraws of the punch hole, or null
+     */
+    void setMetrics(CoachMarkMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    private void checkHoleIndex(int index) {
+        if (index < 0 || index >= mHoleCount) {
+            throw new IllegalArgumentException("There is no punch hole at index " + index);
+        }
+    }
+
+    private boolean isHoleVisible(int index) {
+        return mHoleScale > 0 && mHoleHalfWidth[index] > 0 && mHoleHalfHeight[index] > 0;
+    }
+
+    /**
+     * Get the cached path of a hole's shape, centred on the origin, rebuilding
+     * it if the hole has changed shape or size
+     */
+    private Path getHolePath(int index) {
+        Path path = mHolePaths[index];
+        if (path == null) {
+            path = new Path();
+            mHolePaths[index] = path;
+            mHolePathDirty[index] = true;
+        }
+        if (mHolePathDirty[index]) {
+            mHolePathDirty[index] = false;
+            path.rewind();
+            mHoleRect.set(-mHoleHalfWidth[index], -mHoleHalfHeight[index],
+                    mHoleHalfWidth[index], mHoleHalfHeight[index]);
+            if (mHoleShape[index] == SHAPE_ROUNDED_RECT) {
+                final float cornerRadius = mHoleCornerRadius[index];
+                path.addRoundRect(mHoleRect, cornerRadius, cornerRadius, Path.Direction.CW);
+            } else {
+                // A circle is an oval which is as wide as it is high
+                path.addOval(mHoleRect, Path.Direction.CW);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Check whether an offset from the centre of a hole, folded into the
+     * bottom right quarter, is inside the hole's shape
+     */
+    private boolean isInHole(int index, float dx, float dy) {
+        final float halfWidth = mHoleHalfWidth[index];
+        final float halfHeight = mHoleHalfHeight[index];
+        if (halfWidth <= 0 || halfHeight <= 0 || dx > halfWidth || dy > halfHeight) {
             return false;
         }
+
+        if (mHoleShape[index] == SHAPE_ROUNDED_RECT) {
+            final float cornerRadius =
+                    Math.min(mHoleCornerRadius[index], Math.min(halfWidth, halfHeight));
+            final float cornerX = dx - (halfWidth - cornerRadius);
+            final float cornerY = dy - (halfHeight - cornerRadius);
+            return cornerX <= 0 || cornerY <= 0
+                    || cornerX * cornerX + cornerY * cornerY <= cornerRadius * cornerRadius;
+        }
+        final float x = dx / halfWidth;
+        final float y = dy / halfHeight;
+        return x * x + y * y <= 1f;
+    }
+
+    /**
+     * Add the bounds of a punch hole, including any anti-aliased edge pixels,
+     * to the given bounds
+     */
+    private void unionHoleBounds(int index, Rect bounds) {
+        if (!isHoleVisible(index)) {
+            return;
+        }
+        final float halfWidth = mHoleHalfWidth[index] * mHoleScale;
+        final float halfHeight = mHoleHalfHeight[index] * mHoleScale;
+        bounds.union(
+                (int) Math.floor(mHoleCenterX[index] - halfWidth) - 1,
+                (int) Math.floor(mHoleCenterY[index] - halfHeight) - 1,
+                (int) Math.ceil(mHoleCenterX[index] + halfWidth) + 1,
+                (int) Math.ceil(mHoleCenterY[index] + halfHeight) + 1);
+    }
+
+    /**
+     * Redraw the parts of the overlay covered by mDirtyRect, which must contain
+     * the old and new bounds of any holes which have changed
+     */
+    private void invalidateDirtyRect() {
+        mOverlayPathDirty = true;
+        postInvalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+        if (mMetrics != null) {
+            mMetrics.addPunchHoleInvalidation();
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        final float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
     }
 
     public void setOnTargetClickListener(OnClickListener listener) {
         this.mPunchHoleClickListener = listener;
     }
 
+    /**
+     * Set a listener to be called with the index of the punch hole which is
+     * clicked. It is called as well as the target click listener.
+     */
+    public void setOnHoleClickListener(OnHoleClickListener listener) {
+        this.mHoleClickListener = listener;
+    }
+
     public void setOnGlobalClickListener(OnClickListener listener) {
         this.mGlobalClickListener = listener;
     }
+
+    /**
+     * Properties for animating the punch hole without looking up its setters
+     * by reflection, or boxing the animated values, on every frame
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    static final class AnimationProperties {
+
+        static final IntProperty<PunchHoleView> CIRCLE_CENTER_X =
+                new IntProperty<PunchHoleView>("circleCenterX") {
+                    @Override
+                    public Integer get(PunchHoleView view) {
+                        return view.mHoleCount > 0 ? view.mHoleCenterX[0] : 0;
+                    }
+
+                    @Override
+                    public void setValue(PunchHoleView view, int centerX) {
+                        view.setCircleCenterX(centerX);
+                    }
+                };
+
+        static final FloatProperty<PunchHoleView> HOLE_SCALE =
+                new FloatProperty<PunchHoleView>("holeScale") {
+                    @Override
+                    public Float get(PunchHoleView view) {
+                        return view.mHoleScale;
+                    }
+
+                    @Override
+                    public void setValue(PunchHoleView view, float scale) {
+                        view.setHoleScale(scale);
+                    }
+                };
+
+        private AnimationProperties() {
+        }
+    }
+
+    /**
+     * Animates the x coordinate of the punch hole where {@link AnimationProperties}
+     * are not available. The coordinate is worked out from the animated
+     * fraction, rather than read from the animator as a boxed value.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static final class CircleCenterXUpdater implements ValueAnimator.AnimatorUpdateListener {
+
+        private final PunchHoleView mView;
+        private final int mFromX;
+        private final int mToX;
+
+        CircleCenterXUpdater(PunchHoleView view, int fromX, int toX) {
+            mView = view;
+            mFromX = fromX;
+            mToX = toX;
+        }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            // The same as an IntEvaluator
+            mView.setCircleCenterX(
+                    (int) (mFromX + animation.getAnimatedFraction() * (mToX - mFromX)));
+        }
+    }
+
+    /**
+     * Animates the scale of the punch holes where {@link AnimationProperties}
+     * are not available
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static final class HoleScaleUpdater implements ValueAnimator.AnimatorUpdateListener {
+
+        private final PunchHoleView mView;
+        private final float mFromScale;
+        private final float mToScale;
+
+        HoleScaleUpdater(PunchHoleView view, float fromScale, float toScale) {
+            mView = view;
+            mFromScale = fromScale;
+            mToScale = toScale;
+        }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            mView.setHoleScale(
+                    mFromScale + animation.getAnimatedFraction() * (mToScale - mFromScale));
+        }
+    }
 }
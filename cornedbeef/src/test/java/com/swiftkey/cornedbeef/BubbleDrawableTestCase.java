@@ -0,0 +1,69 @@
+package com.swiftkey.cornedbeef;
+
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class BubbleDrawableTestCase {
+
+    private BubbleDrawable mDrawable;
+    private Drawable.Callback mCallback;
+
+    @Before
+    public void setUp() {
+        mDrawable = new BubbleDrawable(Color.RED, 4, 16, 8);
+        mDrawable.setBounds(0, 0, 200, 100);
+        mCallback = mock(Drawable.Callback.class);
+        mDrawable.setCallback(mCallback);
+    }
+
+    /**
+     * Ensure that moving or flipping the pointy mark invalidates the drawable
+     * once per change, and not at all if nothing has changed
+     */
+    @Test
+    public void testSetArrowInvalidatesOnce() {
+        mDrawable.setArrow(false, 20);
+        mDrawable.setArrow(false, 20);
+        verify(mCallback, times(1)).invalidateDrawable(mDrawable);
+
+        mDrawable.setArrow(true, 20);
+        verify(mCallback, times(2)).invalidateDrawable(mDrawable);
+        assertTrue(mDrawable.isArrowPointingUp());
+        assertEquals(20, mDrawable.getArrowLeft());
+    }
+
+    /**
+     * Ensure that new drawables share the state, but not the position of the
+     * pointy mark
+     */
+    @Test
+    public void testConstantStateShared() {
+        mDrawable.setArrow(true, 20);
+
+        final BubbleDrawable other = (BubbleDrawable) mDrawable.getConstantState().newDrawable();
+
+        assertNotSame(mDrawable, other);
+        assertSame(mDrawable.getConstantState(), other.getConstantState());
+        assertSame(mDrawable, mDrawable.mutate());
+        assertEquals(Color.RED, other.getColor());
+        assertEquals(16, other.getArrowWidth());
+        assertEquals(8, other.getArrowHeight());
+        assertFalse(other.isArrowPointingUp());
+        assertEquals(0, other.getArrowLeft());
+    }
+}
@@ -0,0 +1,128 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup.LayoutParams;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BubbleViewTestCase {
+
+    private static final int PADDING = 10;
+    private static final int ARROW_HEIGHT = 8;
+
+    private BubbleView mView;
+    private View mContent;
+
+    @Before
+    public void setUp() {
+        mView = new BubbleView(getContext(), null);
+        mView.setPadding(PADDING, PADDING, PADDING, PADDING);
+        mView.setBubble(new BubbleDrawable(Color.RED, 4, 16, ARROW_HEIGHT));
+        mContent = new View(getContext());
+        mView.addView(mContent, new LayoutParams(100, 50));
+    }
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    /**
+     * Ensure that the bubble wraps its content, leaving room for a single
+     * pointy mark below the padding
+     */
+    @Test
+    public void testWrapsContent() {
+        mView.measure(MeasureSpec.makeMeasureSpec(500, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+
+        assertSame(mView.getBubble(), mView.getBackground());
+        assertEquals(100 + 2 * PADDING, mView.getMeasuredWidth());
+        assertEquals(50 + 2 * PADDING + ARROW_HEIGHT, mView.getMeasuredHeight());
+        assertEquals(PADDING, mContent.getLeft());
+        assertEquals(PADDING, mContent.getTop());
+    }
+
+    /**
+     * Ensure that flipping the pointy mark moves the content to the other side
+     * of it, without changing the size of the bubble
+     */
+    @Test
+    public void testFlipArrowMovesContent() {
+        mView.measure(MeasureSpec.makeMeasureSpec(500, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+
+        mView.setArrow(true, 20);
+
+        assertTrue(mView.getBubble().isArrowPointingUp());
+        assertEquals(PADDING + ARROW_HEIGHT, mContent.getTop());
+        assertFalse(mView.isLayoutRequested());
+
+        mView.measure(MeasureSpec.makeMeasureSpec(500, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+
+        assertEquals(50 + 2 * PADDING + ARROW_HEIGHT, mView.getMeasuredHeight());
+        assertEquals(PADDING + ARROW_HEIGHT, mContent.getTop());
+
+        mView.setArrow(false, 20);
+
+        assertEquals(PADDING, mContent.getTop());
+    }
+
+    /**
+     * Ensure that a bubble given a fixed height, as in a coach mark layer,
+     * still reports the height it needs to fit its content
+     */
+    @Test
+    public void testDesiredHeightWhenMeasuredExactly() {
+        mView.measure(MeasureSpec.makeMeasureSpec(500, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(30, MeasureSpec.EXACTLY));
+
+        assertEquals(30, mView.getMeasuredHeight());
+        assertEquals(50, mContent.getMeasuredHeight());
+        assertEquals(50 + 2 * PADDING + ARROW_HEIGHT, mView.getDesiredHeight());
+    }
+
+    /**
+     * Ensure that a bubble stretched wider than its content keeps the content
+     * at its own size, while the bubble is drawn at the full width
+     */
+    @Test
+    public void testStretchedBubble() {
+        mView.measure(MeasureSpec.makeMeasureSpec(300, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+
+        assertEquals(300, mView.getMeasuredWidth());
+        assertEquals(100, mContent.getWidth());
+        assertEquals(300, mView.getWidth());
+    }
+
+    /**
+     * Ensure that content which is too wide is limited to the space inside the padding
+     */
+    @Test
+    public void testContentLimitedByWidth() {
+        mContent.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, 50));
+        mView.measure(MeasureSpec.makeMeasureSpec(80, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+
+        assertEquals(80, mView.getMeasuredWidth());
+        assertEquals(80 - 2 * PADDING, mContent.getMeasuredWidth());
+    }
+}
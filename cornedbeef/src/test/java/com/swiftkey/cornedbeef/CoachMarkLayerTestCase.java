@@ -0,0 +1,216 @@
+package com.swiftkey.cornedbeef;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CoachMarkLayerTestCase {
+
+    private CoachMarkLayer mLayout;
+
+    @Before
+    public void setUp() {
+        mLayout = new CoachMarkLayer(getContext());
+    }
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    private TouchRecordingView addChild(int x, int y, int width, int height, boolean touchable) {
+        final TouchRecordingView child = new TouchRecordingView(getContext());
+        final CoachMarkLayer.LayoutParams params =
+                new CoachMarkLayer.LayoutParams(x, y, width, height);
+        params.touchable = touchable;
+        mLayout.addView(child, params);
+        return child;
+    }
+
+    private void layout() {
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, 1000, 1000);
+    }
+
+    private boolean touch(float x, float y) {
+        final long now = SystemClock.uptimeMillis();
+        final MotionEvent event = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, x, y, 0);
+        final boolean handled = mLayout.dispatchTouchEvent(event);
+        event.recycle();
+        return handled;
+    }
+
+    /**
+     * Ensure that each coach mark is laid out at its own position, and is
+     * moved and resized without waiting for another layout pass
+     */
+    @Test
+    public void testChildrenPositioned() {
+        final View child = addChild(10, 20, 100, 50, true);
+        layout();
+
+        assertEquals(10, child.getLeft());
+        assertEquals(20, child.getTop());
+        assertEquals(100, child.getWidth());
+        assertEquals(50, child.getHeight());
+
+        mLayout.setChildBounds(child, 30, 40, 100, 50);
+
+        assertEquals(30, child.getLeft());
+        assertEquals(40, child.getTop());
+
+        mLayout.setChildBounds(child, 30, 40, 200, 60);
+
+        assertEquals(200, child.getWidth());
+        assertEquals(60, child.getHeight());
+    }
+
+    /**
+     * Ensure that coach marks are positioned relative to the root of their
+     * window, and follow the layer's position within that window
+     */
+    @Test
+    public void testChildrenPositionedInOffsetLayer() {
+        final Activity activity = Robolectric.buildActivity(Activity.class)
+                .create().start().resume().visible().get();
+        final FrameLayout root = new FrameLayout(activity);
+        activity.setContentView(root);
+        mLayout = new CoachMarkLayer(activity, root);
+        final FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(1000, 1000);
+        params.topMargin = 50;
+        root.addView(mLayout, params);
+        root.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1100, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, 1000, 1100);
+        final int[] rootLocation = new int[2];
+        root.getLocationOnScreen(rootLocation);
+
+        final View child = new View(activity);
+        mLayout.addCoachMark(null, child, new MutableCoachMarkDimens(
+                rootLocation[0] + 10, rootLocation[1] + 70, 100, 50), false, null);
+        mLayout.layout(0, 50, 1000, 1050);
+
+        assertEquals(10, child.getLeft());
+        assertEquals(20, child.getTop());
+
+        mLayout.layout(0, 0, 1000, 1000);
+
+        assertEquals(70, child.getTop());
+
+        mLayout.updateCoachMark(child, new MutableCoachMarkDimens(
+                rootLocation[0] + 10, rootLocation[1] + 90, 100, 50));
+
+        assertEquals(90, child.getTop());
+    }
+
+    /**
+     * Ensure that touches on a touchable coach mark go to it, and that touches
+     * which miss it are left for the views underneath the layer
+     */
+    @Test
+    public void testTouchesDispatchedToChild() {
+        final TouchRecordingView child = addChild(0, 0, 100, 100, true);
+        layout();
+
+        assertTrue(touch(50, 50));
+        assertTrue(child.touched);
+
+        child.touched = false;
+
+        assertFalse(touch(500, 500));
+        assertFalse(child.touched);
+    }
+
+    /**
+     * Ensure that coach marks which are not touchable don't take touches
+     */
+    @Test
+    public void testTouchesPassThroughUntouchableChild() {
+        final TouchRecordingView child = addChild(0, 0, 100, 100, false);
+        layout();
+
+        assertFalse(touch(50, 50));
+        assertFalse(child.touched);
+    }
+
+    /**
+     * Ensure that the coach mark layer of a {@link CoachMarkFrameLayout} stays
+     * on top of the content added to it
+     */
+    @Test
+    public void testFrameLayoutKeepsCoachMarksOnTop() {
+        final CoachMarkFrameLayout frameLayout = new CoachMarkFrameLayout(getContext());
+        final View content = new View(getContext());
+
+        frameLayout.addView(content);
+        frameLayout.addView(new View(getContext()), 5);
+
+        assertEquals(3, frameLayout.getChildCount());
+        assertSame(content, frameLayout.getChildAt(0));
+        assertSame(frameLayout.getCoachMarkLayer(), frameLayout.getChildAt(2));
+        assertSame(frameLayout, CoachMarkFrameLayout.findContaining(content));
+    }
+
+    /**
+     * Ensure that a coach mark added to a {@link CoachMarkFrameLayout} before
+     * it is laid out, away from the origin of its window, is positioned where
+     * it was put on screen
+     */
+    @Test
+    public void testOffsetFrameLayoutPositionsCoachMarks() {
+        final Activity activity = Robolectric.buildActivity(Activity.class)
+                .create().start().resume().visible().get();
+        final CoachMarkFrameLayout frameLayout = new CoachMarkFrameLayout(activity);
+        frameLayout.setPadding(20, 150, 0, 0);
+        activity.setContentView(frameLayout);
+        final int[] frameLayoutLocation = new int[2];
+        frameLayout.getLocationOnScreen(frameLayoutLocation);
+
+        final View child = new View(activity);
+        frameLayout.getCoachMarkLayer().addCoachMark(null, child, new MutableCoachMarkDimens(
+                frameLayoutLocation[0] + 30, frameLayoutLocation[1] + 200, 100, 50),
+                false, null);
+        frameLayout.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY));
+        frameLayout.layout(frameLayout.getLeft(), frameLayout.getTop(),
+                frameLayout.getLeft() + 1000, frameLayout.getTop() + 1000);
+
+        final int[] childLocation = new int[2];
+        child.getLocationOnScreen(childLocation);
+        assertEquals(frameLayoutLocation[0] + 30, childLocation[0]);
+        assertEquals(frameLayoutLocation[1] + 200, childLocation[1]);
+        assertEquals(10, child.getLeft());
+        assertEquals(50, child.getTop());
+    }
+
+    private static class TouchRecordingView extends View {
+
+        boolean touched;
+
+        TouchRecordingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean dispatchTouchEvent(MotionEvent event) {
+            touched = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.swiftkey.cornedbeef;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.PopupWindow;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.util.ActivityController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class CoachMarkPoolTestCase {
+
+    private static final int LAYOUT = R.layout.layered_coach_mark;
+    private static final int OTHER_LAYOUT = R.layout.highlight_coach_mark;
+
+    private CoachMarkPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new CoachMarkPool();
+    }
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    /**
+     * Ensure that a released view and window are handed out again, but only once
+     */
+    @Test
+    public void testReleasedViewIsReused() {
+        final View view = new View(getContext());
+        final PopupWindow popup = mock(PopupWindow.class);
+
+        mPool.release(getContext(), LAYOUT, view, popup);
+        final CoachMarkPool.PooledCoachMark pooled = mPool.acquire(getContext(), LAYOUT);
+
+        assertSame(view, pooled.view);
+        assertSame(popup, pooled.popup);
+        assertNull(mPool.acquire(getContext(), LAYOUT));
+    }
+
+    /**
+     * Ensure that the view of a coach mark which never had a window of its own
+     * is still reused
+     */
+    @Test
+    public void testViewWithoutWindowIsReused() {
+        final View view = new View(getContext());
+
+        mPool.release(getContext(), LAYOUT, view, null);
+        final CoachMarkPool.PooledCoachMark pooled = mPool.acquire(getContext(), LAYOUT);
+
+        assertSame(view, pooled.view);
+        assertNull(pooled.popup);
+    }
+
+    /**
+     * Ensure that views are only reused for the same layout and context
+     */
+    @Test
+    public void testViewOnlyReusedForSameLayoutAndContext() {
+        mPool.release(getContext(), LAYOUT, new View(getContext()), mock(PopupWindow.class));
+
+        assertNull(mPool.acquire(getContext(), OTHER_LAYOUT));
+        assertNull(mPool.acquire(new ContextWrapper(getContext()), LAYOUT));
+        assertEquals(1, mPool.getPoolSize(LAYOUT));
+    }
+
+    /**
+     * Ensure that the pool does not grow past its maximum size
+     */
+    @Test
+    public void testPoolIsBounded() {
+        mPool.setMaxPoolSize(1);
+        mPool.release(getContext(), LAYOUT, new View(getContext()), mock(PopupWindow.class));
+        mPool.release(getContext(), LAYOUT, new View(getContext()), mock(PopupWindow.class));
+
+        assertEquals(1, mPool.getPoolSize(LAYOUT));
+
+        mPool.setMaxPoolSize(0);
+
+        assertEquals(0, mPool.getPoolSize(LAYOUT));
+    }
+
+    /**
+     * Ensure that the pool is emptied when the system asks for memory to be trimmed
+     */
+    @Test
+    public void testPoolClearedOnTrimMemory() {
+        mPool.release(getContext(), LAYOUT, new View(getContext()), mock(PopupWindow.class));
+
+        new CoachMarkPool.PoolComponentCallbacks(mPool)
+                .onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(0, mPool.getPoolSize(LAYOUT));
+    }
+
+    /**
+     * Ensure that the views and windows of an activity are released as soon as
+     * it is destroyed, without waiting for the pool to be used again
+     */
+    @Test
+    public void testPoolReleasesDestroyedActivity() {
+        RuntimeEnvironment.application.registerActivityLifecycleCallbacks(
+                new CoachMarkPool.PoolComponentCallbacks(mPool));
+        final ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        final Activity activity = controller.get();
+        final Context themedContext = new ContextThemeWrapper(activity, 0);
+        mPool.release(activity, LAYOUT, new View(activity), mock(PopupWindow.class));
+        mPool.release(themedContext, OTHER_LAYOUT, new View(themedContext), mock(PopupWindow.class));
+        mPool.release(getContext(), LAYOUT, new View(getContext()), mock(PopupWindow.class));
+
+        controller.destroy();
+
+        assertEquals(1, mPool.getPoolSize(LAYOUT));
+        assertEquals(0, mPool.getPoolSize(OTHER_LAYOUT));
+        assertNotNull(mPool.acquire(getContext(), LAYOUT));
+    }
+}
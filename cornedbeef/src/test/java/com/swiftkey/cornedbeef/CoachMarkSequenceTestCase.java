@@ -0,0 +1,165 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class CoachMarkSequenceTestCase {
+
+    private CoachMarkFrameLayout mFrameLayout;
+    private View mAnchor;
+    private CoachMarkSequence mSequence;
+
+    @Before
+    public void setUp() {
+        // Build on the calling thread, rather than in the background
+        CoachMarkPrepareExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+
+        // Draw the steps in a frame layout, so that they don't need a window
+        mFrameLayout = new CoachMarkFrameLayout(getContext());
+        mAnchor = new View(getContext());
+        mFrameLayout.addView(mAnchor);
+
+        mSequence = new CoachMarkSequence();
+        for (int i = 0; i < 3; i++) {
+            mSequence.addStep(new LayeredCoachMark.LayeredCoachMarkBuilder(
+                    getContext(), mAnchor, "step " + i).setTimeout(0));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        CoachMarkPrepareExecutor.setExecutor(null);
+    }
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    /**
+     * Ensure that the steps are shown one at a time, in order, and that each
+     * is reported to the step listener
+     */
+    @Test
+    public void testStepsShownInOrder() {
+        final CoachMarkSequence.OnStepListener stepListener =
+                mock(CoachMarkSequence.OnStepListener.class);
+        final CoachMarkSequence.OnFinishListener finishListener =
+                mock(CoachMarkSequence.OnFinishListener.class);
+        mSequence.setOnStepListener(stepListener).setOnFinishListener(finishListener);
+
+        mSequence.start();
+        final CoachMark first = mSequence.getCurrentCoachMark();
+        assertEquals(0, mSequence.getCurrentStep());
+        assertTrue(first.isShowing());
+        verify(stepListener).onStep(eq(mSequence), eq(0), any(CoachMark.class));
+
+        ShadowLooper.idleMainLooper();
+        mSequence.next();
+        final CoachMark second = mSequence.getCurrentCoachMark();
+        assertEquals(1, mSequence.getCurrentStep());
+        assertNotSame(first, second);
+        assertFalse(first.isShowing());
+        assertTrue(second.isShowing());
+        assertEquals(1, mFrameLayout.getCoachMarkLayer().getChildCount());
+        verify(stepListener).onStep(mSequence, 1, second);
+
+        ShadowLooper.idleMainLooper();
+        mSequence.next();
+        mSequence.next();
+        assertFalse(mSequence.isRunning());
+        assertNull(mSequence.getCurrentCoachMark());
+        assertEquals(0, mFrameLayout.getCoachMarkLayer().getChildCount());
+        verify(finishListener).onFinish(mSequence);
+    }
+
+    /**
+     * Ensure that the next step is prepared while the current one is showing,
+     * and is shown straight away once the sequence moves on
+     */
+    @Test
+    public void testNextStepPreparedInAdvance() {
+        mSequence.start();
+        ShadowLooper.idleMainLooper();
+
+        mSequence.next();
+
+        final CoachMark second = mSequence.getCurrentCoachMark();
+        assertEquals(1, mSequence.getCurrentStep());
+        assertSame(second.getContentView().getParent(), mFrameLayout.getCoachMarkLayer());
+    }
+
+    /**
+     * Ensure that moving on waits for the next step to be prepared, and that
+     * dismissing a step moves on to the next one
+     */
+    @Test
+    public void testDismissingStepMovesOn() {
+        ShadowLooper.pauseMainLooper();
+        mSequence.start();
+        final CoachMark first = mSequence.getCurrentCoachMark();
+
+        // The second step has not been handed back to the main thread yet
+        first.dismiss();
+        assertEquals(0, mSequence.getCurrentStep());
+        assertNull(mSequence.getCurrentCoachMark());
+
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, mSequence.getCurrentStep());
+        assertTrue(mSequence.getCurrentCoachMark().isShowing());
+    }
+
+    /**
+     * Ensure that a step's builder is only changed when the sequence is
+     * started, and that its dismiss listener is still called once when the
+     * sequence is run again
+     */
+    @Test
+    public void testStepBuilderChangedWhenStarted() {
+        final CoachMark.OnDismissListener dismissListener =
+                mock(CoachMark.OnDismissListener.class);
+        final CoachMark.CoachMarkBuilder builder = new LayeredCoachMark.LayeredCoachMarkBuilder(
+                getContext(), mAnchor, "step").setTimeout(0).setOnDismissListener(dismissListener);
+        mSequence = new CoachMarkSequence().addStep(builder);
+
+        assertFalse(builder.hosted);
+        assertSame(dismissListener, builder.dismissListener);
+
+        mSequence.start();
+        assertTrue(builder.hosted);
+        mSequence.getCurrentCoachMark().dismiss();
+        assertFalse(mSequence.isRunning());
+
+        mSequence.start();
+        mSequence.getCurrentCoachMark().dismiss();
+        assertFalse(mSequence.isRunning());
+        verify(dismissListener, times(2)).onDismiss();
+    }
+}
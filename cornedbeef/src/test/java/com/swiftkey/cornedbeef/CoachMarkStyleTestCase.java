@@ -0,0 +1,98 @@
+package com.swiftkey.cornedbeef;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class CoachMarkStyleTestCase {
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    /**
+     * Ensure that the style is only resolved again when the configuration changes
+     */
+    @Test
+    public void testResolvedOncePerConfiguration() {
+        final CoachMarkStyle style = CoachMarkStyle.getInstance(getContext());
+        assertSame(style, CoachMarkStyle.getInstance(getContext()));
+
+        final Resources res = getContext().getResources();
+        final Configuration config = new Configuration(res.getConfiguration());
+        config.fontScale = config.fontScale * 2;
+        res.updateConfiguration(config, res.getDisplayMetrics());
+        assertNotSame(style, CoachMarkStyle.getInstance(getContext()));
+    }
+
+    /**
+     * Ensure that contexts with different configurations each keep their own
+     * style, rather than resolving it again whenever the other asks for it
+     */
+    @Test
+    public void testStyleKeptForEachConfiguration() {
+        final Resources res = getContext().getResources();
+        final Configuration config = new Configuration(res.getConfiguration());
+        config.fontScale = config.fontScale * 2;
+        final Resources otherRes =
+                new Resources(res.getAssets(), res.getDisplayMetrics(), config);
+        final Context otherContext = new ContextWrapper(getContext()) {
+            @Override
+            public Resources getResources() {
+                return otherRes;
+            }
+        };
+
+        final CoachMarkStyle style = CoachMarkStyle.getInstance(getContext());
+        final CoachMarkStyle otherStyle = CoachMarkStyle.getInstance(otherContext);
+        assertNotSame(style, otherStyle);
+        assertSame(style, CoachMarkStyle.getInstance(getContext()));
+        assertSame(otherStyle, CoachMarkStyle.getInstance(otherContext));
+    }
+
+    /**
+     * Ensure that the resolved values match the resources
+     */
+    @Test
+    public void testValuesMatchResources() {
+        final Resources res = getContext().getResources();
+        final CoachMarkStyle style = CoachMarkStyle.getInstance(getContext());
+
+        assertEquals(res.getDimension(R.dimen.punchhole_coach_mark_gap),
+                style.getPunchHoleGap(), 0);
+        assertEquals((int) res.getDimension(R.dimen.highlight_coach_mark_stroke_width),
+                style.getHighlightStrokeWidth());
+        assertEquals(res.getDisplayMetrics().widthPixels, style.getDisplayWidth());
+        assertEquals((int) (10 * res.getDisplayMetrics().density), style.dipToPixels(10));
+    }
+
+    /**
+     * Ensure that drawables of the same color and stroke share their state,
+     * and that those of a different color or stroke do not
+     */
+    @Test
+    public void testDrawableStateShared() {
+        final CoachMarkStyle style = CoachMarkStyle.getInstance(getContext());
+
+        assertSame(style.getBubbleBackground(Color.RED).getConstantState(),
+                style.getBubbleBackground(Color.RED).getConstantState());
+        assertNotSame(style.getBubbleBackground(Color.RED).getConstantState(),
+                style.getBubbleBackground(Color.BLUE).getConstantState());
+        assertSame(style.getHighlightBackground(getContext(), Color.RED, 4).getConstantState(),
+                style.getHighlightBackground(getContext(), Color.RED, 4).getConstantState());
+        assertNotSame(style.getHighlightBackground(getContext(), Color.RED, 4).getConstantState(),
+                style.getHighlightBackground(getContext(), Color.RED, 8).getConstantState());
+    }
+}
@@ -1,21 +1,52 @@
 package com.swiftkey.cornedbeef;
 
 import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.view.View;
+import android.view.ViewGroup.LayoutParams;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.view.animation.AnimationUtils;
+import android.widget.FrameLayout;
 import android.widget.PopupWindow;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
-import static com.swiftkey.cornedbeef.CoachMark.CoachMarkDimens;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 public class InternallyAnchoredCoachMarkTestCase {
 
+    private static final int WARM_UP_ITERATIONS = 10000;
+    private static final int ITERATIONS = 100000;
+
     private Context getContext() {
         return RuntimeEnvironment.application.getApplicationContext();
     }
@@ -26,11 +57,12 @@ public class InternallyAnchoredCoachMarkTestCase {
         CoachMark coachMark = new TestInternallyAnchoredCoachMark
                 .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
         
-        CoachMarkDimens<Integer> dimens = coachMark.getAnchorDimens();
-        assertEquals((Integer) 0,   dimens.x);
-        assertEquals((Integer) 0,   dimens.y);
-        assertEquals((Integer) 300, dimens.width);
-        assertEquals((Integer) 200, dimens.height);
+        MutableCoachMarkDimens dimens = new MutableCoachMarkDimens();
+        coachMark.getAnchorDimens(dimens);
+        assertEquals(0,   dimens.x);
+        assertEquals(0,   dimens.y);
+        assertEquals(300, dimens.width);
+        assertEquals(200, dimens.height);
     }
 
     @Test
@@ -41,17 +73,446 @@ public class InternallyAnchoredCoachMarkTestCase {
                      .setInternalAnchor(0.1f, 0.3f, 0.1f, 0.2f)
                      .build();
         
-        CoachMarkDimens<Integer> dimens = coachMark.getAnchorDimens();
-        assertEquals((Integer) (10+30), dimens.x);      // anchor x-loc + offset
-        assertEquals((Integer) (40+60), dimens.y);      // anchor y-loc + offset
-        assertEquals((Integer) 30,      dimens.width);
-        assertEquals((Integer) 40,      dimens.height);
+        MutableCoachMarkDimens dimens = new MutableCoachMarkDimens();
+        coachMark.getAnchorDimens(dimens);
+        assertEquals(10+30, dimens.x);      // anchor x-loc + offset
+        assertEquals(40+60, dimens.y);      // anchor y-loc + offset
+        assertEquals(30,    dimens.width);
+        assertEquals(40,    dimens.height);
+    }
+
+    @Test
+    public void testUnchangedAnchorUpdatesPopupOnce() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
+        coachMark.preparePopupWindow();
+
+        coachMark.updatePosition();
+        coachMark.updatePosition();
+        coachMark.updatePosition();
+
+        verify(coachMark.mPopup, times(1)).update(10, 40, 300, 200);
+    }
+
+    @Test
+    public void testMovedAnchorUpdatesPopup() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
+        coachMark.preparePopupWindow();
+
+        coachMark.updatePosition();
+        mockAnchor.setLocation(20, 40);
+        coachMark.updatePosition();
+
+        verify(coachMark.mPopup, times(1)).update(10, 40, 300, 200);
+        verify(coachMark.mPopup, times(1)).update(20, 40, 300, 200);
+    }
+
+    @Test
+    public void testRepositionsCoalescedWithinFrame() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
+        coachMark.preparePopupWindow();
+        when(coachMark.mPopup.isShowing()).thenReturn(true);
+        CoachMarkRepositionScheduler scheduler = CoachMarkRepositionScheduler.getInstance();
+
+        // Run the frame by hand rather than as soon as it is posted
+        ShadowLooper.pauseMainLooper();
+        scheduler.schedule(coachMark);
+        mockAnchor.setLocation(20, 40);
+        scheduler.schedule(coachMark);
+        scheduler.doFrame();
+
+        verify(coachMark.mPopup, times(1)).update(anyInt(), anyInt(), anyInt(), anyInt());
+        verify(coachMark.mPopup, times(1)).update(20, 40, 300, 200);
+    }
+
+    @Test
+    public void testPreDrawRepositionsInSameFrame() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
+        coachMark.preparePopupWindow();
+        when(coachMark.mPopup.isShowing()).thenReturn(true);
+        CoachMarkRepositionScheduler scheduler = CoachMarkRepositionScheduler.getInstance();
+
+        // The coach mark is repositioned without waiting for the next frame
+        ShadowLooper.pauseMainLooper();
+        SystemClock.sleep(16);
+        scheduler.onPreDraw(coachMark);
+        verify(coachMark.mPopup, times(1)).update(10, 40, 300, 200);
+
+        // But only once per frame
+        mockAnchor.setLocation(20, 40);
+        scheduler.onPreDraw(coachMark);
+        verify(coachMark.mPopup, times(1)).update(anyInt(), anyInt(), anyInt(), anyInt());
+
+        SystemClock.sleep(16);
+        scheduler.onPreDraw(coachMark);
+        verify(coachMark.mPopup, times(1)).update(20, 40, 300, 200);
+
+        // The frame callback which was posted for it has nothing left to do
+        ShadowLooper.unPauseMainLooper();
+        verify(coachMark.mPopup, times(2)).update(anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testViewsCreatedWhenPrepared() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, "message").build();
+
+        assertFalse(coachMark.isShowing());
+
+        coachMark.prepare();
+        View view = coachMark.getContentView();
+        coachMark.prepare();
+
+        assertNotNull(view);
+        assertSame(view, coachMark.getContentView());
+        // The window is only created if the coach mark is shown in one of its own
+        assertNull(coachMark.mPopup);
+
+        coachMark.preparePopupWindow();
+
+        assertNotNull(coachMark.mPopup);
+    }
+
+    @Test
+    public void testNoMetricsByDefault() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null).build();
+
+        assertNull(coachMark.getMetrics());
+    }
+
+    @Test
+    public void testMetricsCountRepositionsAndPopupUpdates() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null)
+                    .setMetricsListener(mock(CoachMarkMetrics.Listener.class))
+                    .build();
+        coachMark.preparePopupWindow();
+
+        coachMark.updatePosition();
+        coachMark.updatePosition();
+        mockAnchor.setLocation(20, 40);
+        coachMark.updatePosition();
+
+        CoachMarkMetrics metrics = coachMark.getMetrics();
+        assertEquals("TestInternallyAnchoredCoachMark", metrics.getCoachMarkType());
+        assertEquals(3, metrics.getRepositionCount());
+        assertEquals(2, metrics.getPopupUpdateCount());
+        assertEquals(0, metrics.getPunchHoleInvalidationCount());
+    }
+
+    @Test
+    public void testBuildAsyncPassesCoachMarkToListener() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        CoachMark.OnPreparedListener listener = mock(CoachMark.OnPreparedListener.class);
+
+        // Build on the calling thread, rather than in the background
+        CoachMarkPrepareExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        try {
+            new TestInternallyAnchoredCoachMark
+                    .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null)
+                    .buildAsync(listener);
+            ShadowLooper.idleMainLooper();
+        } finally {
+            CoachMarkPrepareExecutor.setExecutor(null);
+        }
+
+        verify(listener).onPrepared(any(TestInternallyAnchoredCoachMark.class));
+    }
+
+    @Test
+    public void testBuildAsyncFinishesOnMainThread() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        final CoachMark.OnPreparedListener listener = mock(CoachMark.OnPreparedListener.class);
+        final CoachMark[] built = new CoachMark[1];
+
+        // Stand in for the background thread, which can't run the main looper
+        CoachMarkPrepareExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                ShadowLooper.pauseMainLooper();
+                runnable.run();
+            }
+        });
+        try {
+            new TestInternallyAnchoredCoachMark
+                    .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null) {
+                @Override
+                public CoachMark build() {
+                    built[0] = super.build();
+                    return built[0];
+                }
+            }.buildAsync(listener);
+            verify(listener, never()).onPrepared(any(CoachMark.class));
+
+            ShadowLooper.unPauseMainLooper();
+        } finally {
+            CoachMarkPrepareExecutor.setExecutor(null);
+        }
+
+        verify(listener).onPrepared(built[0]);
+        // The window is left until the coach mark is shown
+        assertNull(built[0].mPopup);
+    }
+
+    @Test
+    public void testBuildAsyncRethrowsErrorOnMainThread() {
+        View mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        final CoachMark.OnPreparedListener listener = mock(CoachMark.OnPreparedListener.class);
+        final NoClassDefFoundError error = new NoClassDefFoundError();
+
+        CoachMarkPrepareExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        try {
+            new TestInternallyAnchoredCoachMark
+                    .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null) {
+                @Override
+                public CoachMark build() {
+                    throw error;
+                }
+            }.buildAsync(listener);
+            ShadowLooper.idleMainLooper();
+            fail("The error was not rethrown");
+        } catch (NoClassDefFoundError e) {
+            assertSame(error, e);
+        } finally {
+            CoachMarkPrepareExecutor.setExecutor(null);
+        }
+
+        verify(listener, never()).onPrepared(any(CoachMark.class));
+    }
+
+    @Test
+    public void testDisplayFrameChangeRepositions() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        mockAnchor.setDisplayFrame(0, 0, 480, 800);
+        TestInternallyAnchoredCoachMark coachMark = (TestInternallyAnchoredCoachMark)
+                new TestInternallyAnchoredCoachMark
+                        .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null)
+                        .setTimeout(0)
+                        .build();
+        coachMark.show();
+        assertEquals(new Rect(0, 0, 480, 800), coachMark.mDisplayFrame);
+        assertEquals(1, coachMark.updateViewCount);
+
+        // Nothing has changed, so the coach mark isn't updated
+        assertFalse(coachMark.updateDisplayFrame());
+        coachMark.updatePosition();
+        assertEquals(1, coachMark.updateViewCount);
+
+        // Rotate the display, without moving the anchor
+        mockAnchor.setDisplayFrame(0, 0, 800, 480);
+        assertTrue(coachMark.updateDisplayFrame());
+        coachMark.updatePosition();
+
+        assertEquals(new Rect(0, 0, 800, 480), coachMark.mDisplayFrame);
+        assertEquals(1, coachMark.displayFrameChangeCount);
+        assertEquals(2, coachMark.updateViewCount);
+    }
+
+    @Test
+    public void testPaddingConvertedWithNewStyle() {
+        final Resources[] res = { getContext().getResources() };
+        final Context context = new ContextWrapper(getContext()) {
+            @Override
+            public Resources getResources() {
+                return res[0];
+            }
+        };
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        mockAnchor.setDisplayFrame(0, 0, 480, 800);
+        TestInternallyAnchoredCoachMark coachMark = (TestInternallyAnchoredCoachMark)
+                new TestInternallyAnchoredCoachMark
+                        .TestInternallyAnchoredCoachMarkBuilder(context, mockAnchor, null)
+                        .setPadding(10)
+                        .setTimeout(0)
+                        .build();
+        coachMark.show();
+        assertEquals(coachMark.mStyle.dipToPixels(10), coachMark.mPadding);
+
+        // Double the density along with the configuration, and move to the new display frame
+        final Configuration config = new Configuration(res[0].getConfiguration());
+        config.fontScale = config.fontScale * 2;
+        final DisplayMetrics metrics = new DisplayMetrics();
+        metrics.setTo(res[0].getDisplayMetrics());
+        metrics.density = metrics.density * 2;
+        res[0] = new Resources(res[0].getAssets(), metrics, config) {
+            @Override
+            public DisplayMetrics getDisplayMetrics() {
+                return metrics;
+            }
+        };
+        mockAnchor.setDisplayFrame(0, 0, 800, 480);
+        assertTrue(coachMark.updateDisplayFrame());
+
+        assertSame(CoachMarkStyle.getInstance(context), coachMark.mStyle);
+        assertEquals((int) (10 * metrics.density), coachMark.mPadding);
+    }
+
+    @Test
+    public void testDisplayFrameOnlyReadWhenWindowChanges() {
+        MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        mockAnchor.setDisplayFrame(0, 0, 480, 800);
+        FrameLayout root = new FrameLayout(getContext());
+        root.addView(mockAnchor);
+        root.layout(0, 0, 480, 800);
+        CoachMark coachMark = new TestInternallyAnchoredCoachMark
+                .TestInternallyAnchoredCoachMarkBuilder(getContext(), mockAnchor, null)
+                .setTimeout(0)
+                .build();
+        coachMark.show();
+        int reads = mockAnchor.displayFrameReads;
+
+        // Layout passes which don't change the window don't read the display frame
+        assertFalse(coachMark.onWindowLayout());
+        assertFalse(coachMark.onWindowLayout());
+        assertEquals(reads, mockAnchor.displayFrameReads);
+
+        // Resize the window, as for the soft keyboard
+        mockAnchor.setDisplayFrame(0, 0, 480, 500);
+        root.layout(0, 0, 480, 500);
+        assertTrue(coachMark.onWindowLayout());
+        assertEquals(reads + 1, mockAnchor.displayFrameReads);
+        assertEquals(new Rect(0, 0, 480, 500), coachMark.mDisplayFrame);
+
+        assertFalse(coachMark.onWindowLayout());
+        assertEquals(reads + 1, mockAnchor.displayFrameReads);
+    }
+
+    /**
+     * Test that repositioning a showing bubble coach mark to follow a moving
+     * anchor does not allocate, by checking that the bytes allocated by this
+     * thread do not grow with the number of frames it is repositioned in. Each
+     * frame goes through the whole per-frame path, from the anchor window's
+     * pre-draw pass through the reposition scheduler: reading the anchor's
+     * location, sizing and positioning the popup, moving the pointy mark and
+     * updating the window.
+     *
+     * Robolectric allocates whenever a shadowed method is called, so the
+     * window itself is replaced by one which only records its position. What
+     * a pre-draw pass costs without the coach mark, including reading the
+     * shadowed clock and the copy of the listeners which older platforms make,
+     * is measured separately and left out.
+     */
+    @Test
+    public void testRepositionDoesNotAllocate() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Put the anchor in a root view of its own, as it would be in a window
+        final MockView mockAnchor = new MockView(getContext(), 10, 40, 300, 200);
+        mockAnchor.setDisplayFrame(0, 0, 1080, 1920);
+        final FrameLayout root = new FrameLayout(getContext());
+        root.addView(mockAnchor);
+        // Content which fills the width it is given, so that the bubble spans
+        // the screen and its pointy mark follows the anchor across it
+        final View content = new View(getContext());
+        final CoachMark coachMark = new WindowlessBubbleCoachMark
+                .WindowlessBubbleCoachMarkBuilder(getContext(), mockAnchor, content)
+                .setTimeout(0)
+                .build();
+        coachMark.show();
+        final BubbleDrawable bubble = ((BubbleView) coachMark.getContentView()).getBubble();
+
+        // A window whose only pre-draw listener just reads the clock, as the
+        // reposition scheduler does
+        final View otherRoot = new View(getContext());
+        otherRoot.getViewTreeObserver().addOnPreDrawListener(new OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                AnimationUtils.currentAnimationTimeMillis();
+                return true;
+            }
+        });
+        final ViewTreeObserver anchorObserver = mockAnchor.getViewTreeObserver();
+        final ViewTreeObserver otherObserver = otherRoot.getViewTreeObserver();
+
+        try {
+            // Warm up so that class loading and compilation are not counted
+            drawFrames(allocationBean, mockAnchor, anchorObserver, otherObserver,
+                    WARM_UP_ITERATIONS);
+
+            final long allocated = drawFrames(allocationBean, mockAnchor,
+                    anchorObserver, otherObserver, ITERATIONS);
+
+            // Any per-frame allocation would cost at least 16 bytes per iteration,
+            // whereas what the shadowed calls allocate varies by a few bytes
+            assertTrue("Allocated " + allocated + " bytes", allocated < 8 * ITERATIONS);
+
+            // The pointy mark points at where the anchor was last moved to
+            final Rect bounds = ((WindowlessPopupWindow) coachMark.mPopup).bounds;
+            final int anchorCenterX = getAnchorX(ITERATIONS - 1) + 150;
+            assertEquals(anchorCenterX, bounds.left + bubble.getArrowLeft()
+                    + bubble.getArrowWidth() / 2, 1);
+        } finally {
+            coachMark.dismiss();
+        }
+    }
+
+    /**
+     * Move the anchor across the screen, so that the pointy mark moves within
+     * the bubble, and run a new frame's pre-draw pass in both windows after
+     * each move
+     *
+     * @return the bytes allocated by the pre-draw passes of the anchor's
+     *      window, less those allocated by the passes of the other window
+     */
+    private static long drawFrames(com.sun.management.ThreadMXBean allocationBean,
+            MockView mockAnchor, ViewTreeObserver anchorObserver,
+            ViewTreeObserver otherObserver, int iterations) {
+        final long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            mockAnchor.setLocation(getAnchorX(i), 1000);
+            // Each pass is in a frame of its own, as the scheduler tells them apart by time
+            SystemClock.sleep(16);
+            final long anchorStart = allocationBean.getThreadAllocatedBytes(threadId);
+            anchorObserver.dispatchOnPreDraw();
+            final long anchorEnd = allocationBean.getThreadAllocatedBytes(threadId);
+
+            SystemClock.sleep(16);
+            final long otherStart = allocationBean.getThreadAllocatedBytes(threadId);
+            otherObserver.dispatchOnPreDraw();
+            final long otherEnd = allocationBean.getThreadAllocatedBytes(threadId);
+
+            allocated += (anchorEnd - anchorStart) - (otherEnd - otherStart);
+        }
+        return allocated;
+    }
+
+    private static int getAnchorX(int iteration) {
+        return 100 + iteration % 500;
     }
 
     private static class MockView extends View {
 
-        private final int xLoc;
-        private final int yLoc;
+        private int xLoc;
+        private int yLoc;
+        private final Rect displayFrame = new Rect();
+        private int displayFrameReads;
         
         public MockView(Context context,  int x, int y, int measuredWidth, int measuredHeight) {
             super(context);
@@ -64,10 +525,98 @@ public class InternallyAnchoredCoachMarkTestCase {
             loc[0] = xLoc;
             loc[1] = yLoc;
         }
+
+        @Override
+        public boolean isShown() {
+            return true;
+        }
+
+        public void setLocation(int x, int y) {
+            xLoc = x;
+            yLoc = y;
+        }
+
+        @Override
+        public void getWindowVisibleDisplayFrame(Rect outRect) {
+            displayFrameReads++;
+            outRect.set(displayFrame);
+        }
+
+        public void setDisplayFrame(int left, int top, int right, int bottom) {
+            displayFrame.set(left, top, right, bottom);
+        }
     }
     
+    /**
+     * A real bubble coach mark, whose window only records where it would be shown
+     */
+    private static class WindowlessBubbleCoachMark extends BubbleCoachMark {
+
+        protected WindowlessBubbleCoachMark(WindowlessBubbleCoachMarkBuilder builder) {
+            super(builder);
+        }
+
+        public static class WindowlessBubbleCoachMarkBuilder extends BubbleCoachMarkBuilder {
+
+            public WindowlessBubbleCoachMarkBuilder(Context context, View anchor, View content) {
+                super(context, anchor, content);
+            }
+
+            @Override
+            public CoachMark build() {
+                return new WindowlessBubbleCoachMark(this);
+            }
+        }
+
+        @Override
+        protected PopupWindow createNewPopupWindow(View contentView) {
+            return new WindowlessPopupWindow(contentView);
+        }
+    }
+
+    private static class WindowlessPopupWindow extends PopupWindow {
+
+        private final View mContentView;
+        private boolean mShowing;
+        final Rect bounds = new Rect();
+
+        public WindowlessPopupWindow(View contentView) {
+            super(contentView, LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+            mContentView = contentView;
+        }
+
+        @Override
+        public View getContentView() {
+            return mContentView;
+        }
+
+        @Override
+        public boolean isShowing() {
+            return mShowing;
+        }
+
+        @Override
+        public void showAtLocation(View parent, int gravity, int x, int y) {
+            mShowing = true;
+            bounds.set(x, y, x + getWidth(), y + getHeight());
+        }
+
+        @Override
+        public void update(int x, int y, int width, int height) {
+            bounds.set(x, y, x + width, y + height);
+        }
+
+        @Override
+        public void dismiss() {
+            mShowing = false;
+        }
+    }
+
     private static class TestInternallyAnchoredCoachMark extends InternallyAnchoredCoachMark {
 
+        int updateViewCount;
+        int displayFrameChangeCount;
+
         protected TestInternallyAnchoredCoachMark(TestInternallyAnchoredCoachMarkBuilder builder) {
             super(builder);
 
@@ -87,7 +636,7 @@ public class InternallyAnchoredCoachMarkTestCase {
 
         @Override
         protected View createContentView(View content) {
-            return null;
+            return content;
         }
 
         @Override
@@ -96,13 +645,20 @@ public class InternallyAnchoredCoachMarkTestCase {
         }
 
         @Override
-        protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
-            return null;
+        protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+                MutableCoachMarkDimens outPopupDimens) {
+            outPopupDimens.set(anchorDimens);
         }
 
         @Override
-        protected void updateView(CoachMarkDimens<Integer> popupDimens, CoachMarkDimens<Integer> anchorDimens) {            
-        
+        protected void updateView(MutableCoachMarkDimens popupDimens,
+                MutableCoachMarkDimens anchorDimens) {
+            updateViewCount++;
+        }
+
+        @Override
+        protected void onDisplayFrameChanged(Rect displayFrame) {
+            displayFrameChangeCount++;
         }
     }
 }
@@ -0,0 +1,243 @@
+package com.swiftkey.cornedbeef;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class PunchHoleViewTestCase {
+
+    private PunchHoleView mView;
+
+    @Before
+    public void setUp() {
+        mView = new PunchHoleView(getContext(), null);
+    }
+
+    private Context getContext() {
+        return RuntimeEnvironment.application.getApplicationContext();
+    }
+
+    /**
+     * Ensure that the overlay is drawn by the view itself rather than by a
+     * background, and that it can be recolored
+     */
+    @Test
+    public void testOverlayDrawnByView() {
+        assertNull(mView.getBackground());
+        assertFalse(mView.willNotDraw());
+        assertEquals(CoachMarkUtils.resolveColor(getContext(), R.color.transluscent_background),
+                mView.getOverlayColor());
+
+        mView.setOverlayColor(Color.RED);
+
+        assertEquals(Color.RED, mView.getOverlayColor());
+    }
+
+    /**
+     * Ensure that the overlay's path only covers the bounds of the holes, within
+     * the view, and that the rest of the overlay is left to plain rectangles
+     */
+    @Test
+    public void testOverlayPathCoversHolesOnly() {
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(1000, 1000, Bitmap.Config.ARGB_8888));
+        mView.layout(0, 0, 1000, 1000);
+        mView.setCircle(100, 200, 50f);
+        mView.onDraw(canvas);
+
+        assertEquals(new Rect(49, 149, 151, 251), mView.mOverlayPathBounds);
+
+        mView.setHoleScale(2f);
+        mView.onDraw(canvas);
+
+        assertEquals(new Rect(0, 99, 201, 301), mView.mOverlayPathBounds);
+
+        mView.setHoleScale(0f);
+        mView.onDraw(canvas);
+
+        assertTrue(mView.mOverlayPathBounds.isEmpty());
+    }
+
+    /**
+     * Ensure that moving the punch hole invalidates the view once per change,
+     * and not at all if nothing has changed
+     */
+    @Test
+    public void testSetCircleInvalidatesOnce() {
+        final CoachMarkMetrics metrics = new CoachMarkMetrics("PunchHoleCoachMark");
+        mView.setMetrics(metrics);
+
+        assertTrue(mView.setCircle(100, 200, 50f));
+        assertFalse(mView.setCircle(100, 200, 50f));
+        assertTrue(mView.setCircleCenterX(120));
+
+        assertEquals(2, metrics.getPunchHoleInvalidationCount());
+    }
+
+    /**
+     * Ensure that the animations used where there are no primitive properties
+     * set the punch hole from the animated fraction, and that scaling the hole
+     * redraws it
+     */
+    @Test
+    public void testAnimationUpdaters() {
+        final CoachMarkMetrics metrics = new CoachMarkMetrics("PunchHoleCoachMark");
+        mView.setMetrics(metrics);
+        mView.setCircle(100, 200, 50f);
+
+        final ValueAnimator centerX = ValueAnimator.ofInt(100, 200);
+        centerX.setInterpolator(new LinearInterpolator());
+        centerX.setDuration(1000);
+        centerX.addUpdateListener(new PunchHoleView.CircleCenterXUpdater(mView, 100, 200));
+        final ValueAnimator scale = ValueAnimator.ofFloat(0f, 1f);
+        scale.setInterpolator(new LinearInterpolator());
+        scale.setDuration(1000);
+        scale.addUpdateListener(new PunchHoleView.HoleScaleUpdater(mView, 0f, 1f));
+
+        centerX.setCurrentPlayTime(500);
+        scale.setCurrentPlayTime(500);
+
+        assertEquals(150, mView.getHoleCenterX(0));
+        assertEquals(0.5f, mView.getHoleScale(), 0f);
+        assertEquals(3, metrics.getPunchHoleInvalidationCount());
+    }
+
+    /**
+     * Ensure that clicks inside the punch hole go to the target listener, and
+     * clicks outside it go to the global listener
+     */
+    @Test
+    public void testClickListeners() {
+        final View.OnClickListener targetListener = mock(View.OnClickListener.class);
+        final View.OnClickListener globalListener = mock(View.OnClickListener.class);
+        mView.setOnTargetClickListener(targetListener);
+        mView.setOnGlobalClickListener(globalListener);
+        mView.setCircle(100, 200, 50f);
+
+        mView.onTouchEvent(obtainUp(110, 190));
+        verify(targetListener).onClick(mView);
+
+        mView.onTouchEvent(obtainUp(500, 500));
+        verify(globalListener).onClick(mView);
+    }
+
+    /**
+     * Ensure that several holes can be set, each invalidating only once, and
+     * that removing holes invalidates them
+     */
+    @Test
+    public void testMultipleHoles() {
+        final CoachMarkMetrics metrics = new CoachMarkMetrics("PunchHoleCoachMark");
+        mView.setMetrics(metrics);
+
+        mView.setHoleCount(3);
+        assertTrue(mView.setHole(0, 100, 200, 50f));
+        assertTrue(mView.setHole(1, 300, 200, 20f));
+        assertTrue(mView.setHole(2, 100, 400, 30f));
+        assertFalse(mView.setHole(1, 300, 200, 20f));
+        assertEquals(3, mView.getHoleCount());
+        assertEquals(3, metrics.getPunchHoleInvalidationCount());
+
+        mView.setHoleCount(1);
+        assertEquals(1, mView.getHoleCount());
+        assertEquals(4, metrics.getPunchHoleInvalidationCount());
+    }
+
+    /**
+     * Ensure that setting a hole beyond the hole count fails
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetHoleOutOfRange() {
+        mView.setHoleCount(1);
+        mView.setHole(1, 100, 200, 50f);
+    }
+
+    /**
+     * Ensure that clicks are reported with the index of the hole they hit, as
+     * well as to the target listener
+     */
+    @Test
+    public void testHoleClickListener() {
+        final PunchHoleView.OnHoleClickListener holeListener =
+                mock(PunchHoleView.OnHoleClickListener.class);
+        final View.OnClickListener targetListener = mock(View.OnClickListener.class);
+        mView.setOnHoleClickListener(holeListener);
+        mView.setOnTargetClickListener(targetListener);
+        mView.setHoleCount(2);
+        mView.setHole(0, 100, 200, 50f);
+        mView.setHole(1, 300, 200, 20f);
+
+        assertEquals(1, mView.getHoleIndexAt(310, 190));
+        assertEquals(-1, mView.getHoleIndexAt(200, 200));
+
+        mView.onTouchEvent(obtainUp(310, 190));
+        verify(holeListener).onHoleClick(mView, 1);
+        verify(targetListener).onClick(mView);
+    }
+
+    /**
+     * Ensure that clicks only hit a hole inside its actual shape, rather than
+     * anywhere in its bounds
+     */
+    @Test
+    public void testHitTestingMatchesShape() {
+        mView.setHoleCount(3);
+        mView.setHole(0, 100, 100, 50f);
+        mView.setHole(1, PunchHoleView.SHAPE_OVAL, 400, 100, 100f, 50f, 0f);
+        mView.setHole(2, PunchHoleView.SHAPE_ROUNDED_RECT, 400, 400, 100f, 50f, 20f);
+
+        // Circle
+        assertEquals(0, mView.getHoleIndexAt(130, 130));
+        assertEquals(-1, mView.getHoleIndexAt(145, 145));
+
+        // Oval
+        assertEquals(1, mView.getHoleIndexAt(490, 100));
+        assertEquals(-1, mView.getHoleIndexAt(490, 140));
+
+        // Rounded rectangle
+        assertEquals(2, mView.getHoleIndexAt(490, 400));
+        assertEquals(2, mView.getHoleIndexAt(400, 445));
+        assertEquals(-1, mView.getHoleIndexAt(498, 448));
+    }
+
+    /**
+     * Ensure that changing only the shape of a hole redraws it
+     */
+    @Test
+    public void testSetHoleShapeInvalidates() {
+        final CoachMarkMetrics metrics = new CoachMarkMetrics("PunchHoleCoachMark");
+        mView.setMetrics(metrics);
+        mView.setHoleCount(1);
+
+        assertTrue(mView.setHole(0, PunchHoleView.SHAPE_OVAL, 100, 100, 50f, 50f, 0f));
+        assertTrue(mView.setHole(0, PunchHoleView.SHAPE_ROUNDED_RECT, 100, 100, 50f, 50f, 0f));
+        assertFalse(mView.setHole(0, PunchHoleView.SHAPE_ROUNDED_RECT, 100, 100, 50f, 50f, 0f));
+
+        assertEquals(2, metrics.getPunchHoleInvalidationCount());
+    }
+
+    private static MotionEvent obtainUp(float x, float y) {
+        final long now = SystemClock.uptimeMillis();
+        return MotionEvent.obtain(now, now, MotionEvent.ACTION_UP, x, y, 0);
+    }
+}
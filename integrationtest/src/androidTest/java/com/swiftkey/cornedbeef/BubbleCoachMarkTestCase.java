@@ -1,21 +1,22 @@
 package com.swiftkey.cornedbeef;
 
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.drawable.GradientDrawable;
-import android.os.Build;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.TypedValue;
+import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewGroup.MarginLayoutParams;
 import android.view.WindowManager;
+import android.widget.FrameLayout;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
+import android.widget.PopupWindow;
 import android.widget.TextView;
 
 import androidx.annotation.ColorInt;
-import androidx.test.filters.SdkSuppress;
 import androidx.test.rule.ActivityTestRule;
 
 import com.swiftkey.cornedbeef.test.R;
@@ -26,6 +27,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 import static com.swiftkey.cornedbeef.TestHelper.dismissCoachMark;
 import static com.swiftkey.cornedbeef.TestHelper.moveAnchor;
@@ -33,6 +37,7 @@ import static com.swiftkey.cornedbeef.TestHelper.showCoachMark;
 import static com.swiftkey.cornedbeef.TestHelper.waitUntilStatusBarHidden;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class BubbleCoachMarkTestCase {
@@ -79,8 +84,7 @@ public class BubbleCoachMarkTestCase {
      */
     @Test
     public void testShowPopupAbove() {
-        final View topArrow;
-        final View bottomArrow;
+        final BubbleDrawable background;
 
         moveAnchor(getInstrumentation(), mAnchor, 0, 200);
         showCoachMark(getInstrumentation(), mCoachMark);
@@ -95,14 +99,12 @@ public class BubbleCoachMarkTestCase {
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
         
-        topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertEquals("spam spam spam", tv.getText());
         assertTrue(mCoachMark.isShowing());
         assertTrue(anchorPos[1] >= contentPos[1]+mAnchor.getHeight());
-        assertEquals(View.GONE, topArrow.getVisibility());
-        assertEquals(View.VISIBLE, bottomArrow.getVisibility());
+        assertFalse(background.isArrowPointingUp());
     }
 
     /**
@@ -110,8 +112,7 @@ public class BubbleCoachMarkTestCase {
      */
     @Test
     public void testShowPopupBelow() {
-        final View topArrow;
-        final View bottomArrow;
+        final BubbleDrawable background;
 
         showCoachMark(getInstrumentation(), mCoachMark);
 
@@ -125,14 +126,12 @@ public class BubbleCoachMarkTestCase {
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
         
-        topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertEquals("spam spam spam", tv.getText());
         assertTrue(mCoachMark.isShowing());
         assertTrue(anchorPos[1] <= contentPos[1]);
-        assertEquals(View.VISIBLE, topArrow.getVisibility());
-        assertEquals(View.GONE, bottomArrow.getVisibility());
+        assertTrue(background.isArrowPointingUp());
     }
     
     /**
@@ -141,8 +140,7 @@ public class BubbleCoachMarkTestCase {
      */
     @Test
     public void testShowPopupBelowRoomAbove() {
-        final View topArrow;
-        final View bottomArrow;
+        final BubbleDrawable background;
         mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(
                 mActivity, mAnchor, "spam spam spam")
                 .setShowBelowAnchor(true)
@@ -161,14 +159,12 @@ public class BubbleCoachMarkTestCase {
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
         
-        topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertEquals("spam spam spam", tv.getText());
         assertTrue(mCoachMark.isShowing());
         assertTrue(anchorPos[1] <= contentPos[1]);
-        assertEquals(View.VISIBLE, topArrow.getVisibility());
-        assertEquals(View.GONE, bottomArrow.getVisibility());
+        assertTrue(background.isArrowPointingUp());
     }
     
     /**
@@ -181,11 +177,10 @@ public class BubbleCoachMarkTestCase {
         
         showCoachMark(getInstrumentation(), mCoachMark);
         
-        View arrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        MarginLayoutParams params = (MarginLayoutParams) arrow.getLayoutParams();
+        BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertTrue(mCoachMark.isShowing());
-        assertTrue(params.leftMargin < mCoachMark.getContentView().getWidth()/2);
+        assertTrue(background.getArrowLeft() < mCoachMark.getContentView().getWidth()/2);
     }
     
     /**
@@ -198,11 +193,10 @@ public class BubbleCoachMarkTestCase {
         
         showCoachMark(getInstrumentation(), mCoachMark);
         
-        View arrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        MarginLayoutParams params = (MarginLayoutParams) arrow.getLayoutParams();
+        BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertTrue(mCoachMark.isShowing());
-        assertTrue(params.leftMargin > mCoachMark.getContentView().getWidth()/2); 
+        assertTrue(background.getArrowLeft() > mCoachMark.getContentView().getWidth()/2); 
     }
 
     /**
@@ -239,14 +233,13 @@ public class BubbleCoachMarkTestCase {
 
     /**
      * Test that the position of the popup is updated when the anchor moves and
-     * that the correct arrow is visible depending upon the coach mark position
+     * that the arrow points the correct way depending upon the coach mark position
      */
     @Test
     public void testPopupMovesWhenAnchorMoves() {
         int[] anchorPos = new int[2];
         int[] contentPos = new int[2];
-        final View topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        final View bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        final BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         showCoachMark(getInstrumentation(), mCoachMark);
         
@@ -254,8 +247,7 @@ public class BubbleCoachMarkTestCase {
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
                 
         assertTrue(mCoachMark.isShowing());
-        assertEquals(View.VISIBLE, topArrow.getVisibility());
-        assertEquals(View.GONE, bottomArrow.getVisibility());
+        assertTrue(background.isArrowPointingUp());
         assertEquals(anchorPos[1]+mAnchor.getHeight(), contentPos[1]);
         
         moveAnchor(getInstrumentation(), mAnchor, 50, 200);
@@ -266,13 +258,63 @@ public class BubbleCoachMarkTestCase {
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
                 
         assertTrue(mCoachMark.isShowing());
-        assertEquals(View.GONE, topArrow.getVisibility());
-        assertEquals(View.VISIBLE, bottomArrow.getVisibility());
+        assertFalse(background.isArrowPointingUp());
         assertEquals(anchorPos[1] - mCoachMark.getContentView().getHeight(), contentPos[1]);
         assertTrue(oldCoachMarkX != contentPos[0]);
         assertTrue(oldCoachMarkY != contentPos[1]);
     }
     
+    /**
+     * Test that the position of the popup is updated when the anchor moves if
+     * the anchor is only tracked when it changes, rather than on every frame
+     */
+    @Test
+    public void testPopupMovesWhenAnchorMovesTrackingOnChange() {
+        int[] anchorPos = new int[2];
+        int[] contentPos = new int[2];
+        mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(mActivity, mAnchor, "spam spam spam")
+                .setAnchorTrackingMode(CoachMark.TRACK_ANCHOR_ON_CHANGE)
+                .build();
+
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        mAnchor.getLocationOnScreen(anchorPos);
+        mCoachMark.getContentView().getLocationOnScreen(contentPos);
+        assertEquals(anchorPos[1]+mAnchor.getHeight(), contentPos[1]);
+
+        moveAnchor(getInstrumentation(), mAnchor, 50, 200);
+
+        int oldCoachMarkX = contentPos[0];
+        mAnchor.getLocationOnScreen(anchorPos);
+        mCoachMark.getContentView().getLocationOnScreen(contentPos);
+
+        assertTrue(mCoachMark.isShowing());
+        assertEquals(anchorPos[1] - mCoachMark.getContentView().getHeight(), contentPos[1]);
+        assertTrue(oldCoachMarkX != contentPos[0]);
+    }
+
+    /**
+     * Test that the popup still follows the anchor when it is only allowed to
+     * be repositioned on every other frame
+     */
+    @Test
+    public void testPopupMovesWhenAnchorMovesWithFrameInterval() {
+        int[] anchorPos = new int[2];
+        int[] contentPos = new int[2];
+        mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(mActivity, mAnchor, "spam spam spam")
+                .setRepositionFrameInterval(2)
+                .build();
+
+        showCoachMark(getInstrumentation(), mCoachMark);
+        moveAnchor(getInstrumentation(), mAnchor, 50, 200);
+
+        mAnchor.getLocationOnScreen(anchorPos);
+        mCoachMark.getContentView().getLocationOnScreen(contentPos);
+
+        assertTrue(mCoachMark.isShowing());
+        assertEquals(anchorPos[1] - mCoachMark.getContentView().getHeight(), contentPos[1]);
+    }
+
     /**
      * Verify that the popup is positioned correctly when a long message is set
      */
@@ -290,14 +332,12 @@ public class BubbleCoachMarkTestCase {
         moveAnchor(getInstrumentation(), mAnchor, 0, 600);
         showCoachMark(getInstrumentation(), mCoachMark);
         
-        final View topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        final View bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        final BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
 
         // Verify that there is enough room above the anchor
-        assertEquals(View.GONE, topArrow.getVisibility());
-        assertEquals(View.VISIBLE, bottomArrow.getVisibility());
+        assertFalse(background.isArrowPointingUp());
         
         // Bottom of coach mark should appear above the top of the anchor
         assertTrue(anchorPos[1] >= contentPos[1] + mCoachMark.getContentView().getHeight());
@@ -317,15 +357,13 @@ public class BubbleCoachMarkTestCase {
         moveAnchor(getInstrumentation(), mAnchor, 0, 200);
         showCoachMark(getInstrumentation(), mCoachMark);
         
-        final View topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        final View bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
+        final BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
         final int popupHeight = mCoachMark.getContentView().getHeight();
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);
 
         // Verify that there is enough room above the anchor
-        assertEquals(View.GONE, topArrow.getVisibility());
-        assertEquals(View.VISIBLE, bottomArrow.getVisibility());
+        assertFalse(background.isArrowPointingUp());
         
         // Verify that the coach mark is positioned within the anchor - not above
         assertTrue(contentPos[1] + popupHeight > anchorPos[1]);
@@ -350,12 +388,11 @@ public class BubbleCoachMarkTestCase {
         
         mAnchor.getLocationOnScreen(anchorPos);
         mCoachMark.getContentView().getLocationOnScreen(contentPos);       
-        View arrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        MarginLayoutParams params = (MarginLayoutParams) arrow.getLayoutParams();
+        BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
 
         assertTrue(mCoachMark.isShowing());
-        assertTrue(contentPos[0] + params.leftMargin > anchorPos[0] + mAnchor.getWidth() * 0.50);
-        assertTrue(contentPos[0] + params.leftMargin < anchorPos[0] + mAnchor.getWidth() * 0.75);
+        assertTrue(contentPos[0] + background.getArrowLeft() > anchorPos[0] + mAnchor.getWidth() * 0.50);
+        assertTrue(contentPos[0] + background.getArrowLeft() < anchorPos[0] + mAnchor.getWidth() * 0.75);
     }
     
     /**
@@ -389,7 +426,6 @@ public class BubbleCoachMarkTestCase {
      * Verify that the coach mark bubble color is set correctly
      */
     @Test
-    @SdkSuppress(minSdkVersion = Build.VERSION_CODES.LOLLIPOP)
     public void testSetBubbleColor() {
         final @ColorInt int color = Color.RED;
         mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(
@@ -402,15 +438,27 @@ public class BubbleCoachMarkTestCase {
         showCoachMark(getInstrumentation(), mCoachMark);
 
         assertTrue(mCoachMark.isShowing());
-        final ImageView topArrow = mCoachMark.getContentView().findViewById(R.id.top_arrow);
-        final ImageView bottomArrow = mCoachMark.getContentView().findViewById(R.id.bottom_arrow);
-        final LinearLayout contentHolder = mCoachMark.getContentView().findViewById(R.id.coach_mark_content);
-        assertEquals(color, topArrow.getImageTintList().getDefaultColor());
-        assertEquals(color, bottomArrow.getImageTintList().getDefaultColor());
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            // getColor was added in API 24
-            assertEquals(color, ((GradientDrawable) contentHolder.getBackground()).getColor().getDefaultColor());
-        }
+        final BubbleDrawable background = (BubbleDrawable) mCoachMark.getContentView().getBackground();
+        assertEquals(color, background.getColor());
+        assertEquals(color, getArrowColor(mCoachMark.getContentView(), background));
+
+        // Flip the arrow, which should be drawn in the same color
+        background.setArrow(!background.isArrowPointingUp(), background.getArrowLeft());
+        assertEquals(color, getArrowColor(mCoachMark.getContentView(), background));
+    }
+
+    /**
+     * Verify that coach marks of the same color share their drawable state
+     */
+    @Test
+    public void testBubbleDrawablesShared() {
+        mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(
+                mActivity, mAnchor, "spam spam spam").setBubbleColor(Color.RED).build();
+        final CoachMark other = new BubbleCoachMark.BubbleCoachMarkBuilder(
+                mActivity, mAnchor, "eggs").setBubbleColor(Color.RED).build();
+
+        assertSame(mCoachMark.getContentView().getBackground().getConstantState(),
+                other.getContentView().getBackground().getConstantState());
     }
 
     /**
@@ -454,7 +502,7 @@ public class BubbleCoachMarkTestCase {
     @Test
     public void testNonTextCoachMark() {
         final ImageView imageView = new ImageView(mActivity);
-        imageView.setImageResource(R.drawable.ic_pointy_mark_up);
+        imageView.setImageResource(R.drawable.sk_logo);
         mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(
                 mActivity,
                 mAnchor,
@@ -468,4 +516,125 @@ public class BubbleCoachMarkTestCase {
         final ViewGroup content = mCoachMark.getContentView().findViewById(R.id.coach_mark_content);
         assertTrue(content.getChildAt(0) instanceof ImageView);
     }
+
+    /**
+     * Verify that a pooled coach mark reuses the views of a dismissed one, and
+     * shows its own content in them
+     */
+    @Test
+    public void testPooledCoachMarkReusesViews() {
+        final CoachMark first = new BubbleCoachMark.BubbleCoachMarkBuilder(
+                mActivity, mAnchor, "spam")
+                .setPooled(true)
+                .build();
+        showCoachMark(getInstrumentation(), first);
+        final View firstView = first.getContentView();
+        dismissCoachMark(getInstrumentation(), first);
+
+        mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(mActivity, mAnchor, "eggs")
+                .setPooled(true)
+                .build();
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        assertTrue(mCoachMark.isShowing());
+        assertSame(firstView, mCoachMark.getContentView());
+
+        final ViewGroup content = mCoachMark.getContentView().findViewById(R.id.coach_mark_content);
+        assertEquals(1, content.getChildCount());
+        assertEquals("eggs", ((TextView) content.getChildAt(0)).getText().toString());
+
+        CoachMarkPool.getInstance(mActivity).clear();
+    }
+
+    /**
+     * Verify that a coach mark built in the background is handed back on the
+     * main thread, ready to be shown
+     */
+    @Test
+    public void testBuildAsync() throws InterruptedException {
+        final CountDownLatch prepared = new CountDownLatch(1);
+        final CoachMark[] coachMark = new CoachMark[1];
+        final boolean[] onMainThread = new boolean[1];
+
+        new BubbleCoachMark.BubbleCoachMarkBuilder(mActivity, mAnchor, "spam spam spam")
+                .buildAsync(new CoachMark.OnPreparedListener() {
+                    @Override
+                    public void onPrepared(CoachMark preparedCoachMark) {
+                        coachMark[0] = preparedCoachMark;
+                        onMainThread[0] = Looper.myLooper() == Looper.getMainLooper();
+                        prepared.countDown();
+                    }
+                });
+
+        assertTrue(prepared.await(5, TimeUnit.SECONDS));
+        assertTrue(onMainThread[0]);
+
+        dismissCoachMark(getInstrumentation(), mCoachMark);
+        mCoachMark = coachMark[0];
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        assertTrue(mCoachMark.isShowing());
+    }
+
+    /**
+     * Verify that a bubble which is asked to be hosted is still shown in a
+     * window of its own, since it takes touches, and is shown next to its
+     * anchor in a window which is not at the origin of the screen
+     */
+    @Test
+    public void testHostedInOffsetWindow() {
+        final PopupWindow[] window = new PopupWindow[1];
+        final View[] anchor = new View[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final FrameLayout content = new FrameLayout(mActivity);
+                anchor[0] = new View(mActivity);
+                content.addView(anchor[0], new FrameLayout.LayoutParams(100, 40));
+                window[0] = new PopupWindow(content, 400, 200);
+                window[0].showAtLocation(mAnchor, Gravity.NO_GRAVITY, 100, 300);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        mCoachMark = new BubbleCoachMark.BubbleCoachMarkBuilder(
+                mActivity, anchor[0], "spam spam spam")
+                .setHosted(true)
+                .build();
+
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        final View bubble = mCoachMark.getContentView();
+        final int[] anchorPos = new int[2];
+        final int[] bubblePos = new int[2];
+        anchor[0].getLocationOnScreen(anchorPos);
+        bubble.getLocationOnScreen(bubblePos);
+        final int anchorCenterX = anchorPos[0] + anchor[0].getWidth() / 2;
+
+        assertTrue(mCoachMark.isShowing());
+        assertEquals(0, CoachMarkHost.getHostCount());
+        assertEquals(anchorPos[1], bubblePos[1] + bubble.getHeight());
+        assertTrue(bubblePos[0] <= anchorCenterX);
+        assertTrue(bubblePos[0] + bubble.getWidth() >= anchorCenterX);
+
+        dismissCoachMark(getInstrumentation(), mCoachMark);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                window[0].dismiss();
+            }
+        });
+    }
+
+    /**
+     * Draw a bubble and get the color of the middle of its arrow's base
+     */
+    private static int getArrowColor(View view, BubbleDrawable background) {
+        final Bitmap bitmap = Bitmap.createBitmap(
+                view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
+        background.draw(new Canvas(bitmap));
+        final int x = background.getArrowLeft() + background.getArrowWidth() / 2;
+        final int y = background.isArrowPointingUp()
+                ? background.getArrowHeight() - 1 : view.getHeight() - background.getArrowHeight();
+        return bitmap.getPixel(x, y);
+    }
 }
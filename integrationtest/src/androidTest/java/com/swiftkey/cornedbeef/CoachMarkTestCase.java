@@ -335,17 +335,18 @@ public class CoachMarkTestCase {
         }
 
         @Override
-        protected CoachMarkDimens<Integer> getAnchorDimens() {
-            return null;
+        protected void getAnchorDimens(MutableCoachMarkDimens outAnchorDimens) {
         }
 
         @Override
-        protected CoachMarkDimens<Integer> getPopupDimens(CoachMarkDimens<Integer> anchorDimens) {
-            return new CoachMarkDimens<>(0, 0, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+        protected void getPopupDimens(MutableCoachMarkDimens anchorDimens,
+                MutableCoachMarkDimens outPopupDimens) {
+            outPopupDimens.set(0, 0, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
         }
 
         @Override
-        protected void updateView(CoachMarkDimens<Integer> popupDimens, CoachMarkDimens<Integer> anchorDimens) {
+        protected void updateView(MutableCoachMarkDimens popupDimens,
+                MutableCoachMarkDimens anchorDimens) {
             
         }
         
@@ -1,9 +1,12 @@
 package com.swiftkey.cornedbeef;
 
 import android.graphics.Color;
+import android.view.Gravity;
 import android.view.View;
 import android.view.WindowManager;
+import android.widget.FrameLayout;
 import android.widget.ImageView;
+import android.widget.PopupWindow;
 
 import androidx.test.rule.ActivityTestRule;
 
@@ -19,6 +22,10 @@ import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentat
 import static com.swiftkey.cornedbeef.TestHelper.dismissCoachMark;
 import static com.swiftkey.cornedbeef.TestHelper.showCoachMark;
 import static com.swiftkey.cornedbeef.TestHelper.waitUntilStatusBarHidden;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class HighlightCoachMarkTestCase {
@@ -104,7 +111,7 @@ public class HighlightCoachMarkTestCase {
     @Test
     public void testNonTextCoachMark() {
         final ImageView imageView = new ImageView(mActivity);
-        imageView.setImageResource(R.drawable.ic_pointy_mark_up);
+        imageView.setImageResource(R.drawable.sk_logo);
         mCoachMark = new HighlightCoachMark.HighlightCoachMarkBuilder(
                 mActivity,
                 mAnchor,
@@ -119,4 +126,84 @@ public class HighlightCoachMarkTestCase {
         // Note: we're just testing that this won't provoke a crash because highlight coach marks
         //       have no content
     }
+
+    /**
+     * Verify that hosted coach marks are shown together in a single window,
+     * which is removed along with the last of them
+     */
+    @Test
+    public void testHostedCoachMarksShareWindow() {
+        final CoachMark first = new HighlightCoachMark.HighlightCoachMarkBuilder(
+                mActivity, mAnchor)
+                .setHosted(true)
+                .build();
+        mCoachMark = new HighlightCoachMark.HighlightCoachMarkBuilder(
+                mActivity, mActivity.findViewById(R.id.coach_mark_test_target))
+                .setHosted(true)
+                .build();
+        showCoachMark(getInstrumentation(), first);
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        assertTrue(first.isShowing());
+        assertTrue(mCoachMark.isShowing());
+        assertSame(first.getContentView().getParent(), mCoachMark.getContentView().getParent());
+        assertEquals(1, CoachMarkHost.getHostCount());
+
+        dismissCoachMark(getInstrumentation(), first);
+
+        assertFalse(first.isShowing());
+        assertNull(first.getContentView().getParent());
+        assertTrue(mCoachMark.isShowing());
+        assertEquals(1, CoachMarkHost.getHostCount());
+
+        dismissCoachMark(getInstrumentation(), mCoachMark);
+
+        assertEquals(0, CoachMarkHost.getHostCount());
+    }
+
+    /**
+     * Verify that the shared window is removed, along with its coach marks,
+     * when the window it is shown over is removed, even while it is held
+     */
+    @Test
+    public void testHostRemovedWithTokenWindow() {
+        final PopupWindow[] window = new PopupWindow[1];
+        final View[] anchor = new View[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final FrameLayout content = new FrameLayout(mActivity);
+                anchor[0] = new View(mActivity);
+                content.addView(anchor[0], new FrameLayout.LayoutParams(100, 40));
+                window[0] = new PopupWindow(content, 400, 200);
+                window[0].showAtLocation(mAnchor, Gravity.NO_GRAVITY, 100, 300);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        final CoachMark hosted = new HighlightCoachMark.HighlightCoachMarkBuilder(
+                mActivity, anchor[0])
+                .setHosted(true)
+                .build();
+        showCoachMark(getInstrumentation(), hosted);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CoachMarkHost.getInstance(anchor[0]).hold();
+            }
+        });
+
+        assertTrue(hosted.isShowing());
+        assertEquals(1, CoachMarkHost.getHostCount());
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                window[0].dismiss();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        assertFalse(hosted.isShowing());
+        assertEquals(0, CoachMarkHost.getHostCount());
+    }
 }
@@ -5,6 +5,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.ColorInt;
@@ -24,6 +25,7 @@ import static com.swiftkey.cornedbeef.TestHelper.showCoachMark;
 import static com.swiftkey.cornedbeef.TestHelper.waitUntilStatusBarHidden;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class LayeredCoachMarkTestCase {
@@ -125,7 +127,7 @@ public class LayeredCoachMarkTestCase {
     @Test
     public void testNonTextCoachMark() {
         final ImageView imageView = new ImageView(mActivity);
-        imageView.setImageResource(R.drawable.ic_pointy_mark_up);
+        imageView.setImageResource(R.drawable.sk_logo);
         mCoachMark = new LayeredCoachMark.LayeredCoachMarkBuilder(mActivity, mAnchor, imageView)
                 .build();
 
@@ -136,4 +138,77 @@ public class LayeredCoachMarkTestCase {
         final ViewGroup content = mCoachMark.getContentView().findViewById(R.id.coach_mark_content);
         assertTrue(content.getChildAt(0) instanceof ImageView);
     }
+
+    /**
+     * Verify that a coach mark anchored inside a CoachMarkFrameLayout is drawn
+     * in the layout rather than in a window of its own
+     */
+    @Test
+    public void testEmbeddedInFrameLayout() {
+        final CoachMarkFrameLayout[] frameLayout = new CoachMarkFrameLayout[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frameLayout[0] = new CoachMarkFrameLayout(mActivity);
+                mActivity.getLayoutInflater().inflate(
+                        R.layout.coach_mark_test_activity, frameLayout[0], true);
+                mActivity.setContentView(frameLayout[0]);
+                mAnchor = mActivity.findViewById(R.id.coach_mark_test_layout_anchor);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        mCoachMark = new LayeredCoachMark.LayeredCoachMarkBuilder(mActivity, mAnchor, MESSAGE)
+                .build();
+
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        assertTrue(mCoachMark.isShowing());
+        assertSame(frameLayout[0].getCoachMarkLayer(), mCoachMark.getContentView().getParent());
+        assertEquals(mAnchor.getWidth(), mCoachMark.getContentView().getWidth());
+        assertEquals(mAnchor.getHeight(), mCoachMark.getContentView().getHeight());
+    }
+
+    /**
+     * Verify that a coach mark in a CoachMarkFrameLayout which is not at the
+     * origin of its window still covers its anchor
+     */
+    @Test
+    public void testEmbeddedInOffsetFrameLayout() {
+        final CoachMarkFrameLayout[] frameLayout = new CoachMarkFrameLayout[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final LinearLayout root = new LinearLayout(mActivity);
+                root.setOrientation(LinearLayout.VERTICAL);
+                root.addView(new View(mActivity), new LinearLayout.LayoutParams(
+                        LinearLayout.LayoutParams.MATCH_PARENT, 150));
+                frameLayout[0] = new CoachMarkFrameLayout(mActivity);
+                frameLayout[0].setPadding(30, 0, 0, 0);
+                mActivity.getLayoutInflater().inflate(
+                        R.layout.coach_mark_test_activity, frameLayout[0], true);
+                final LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                        LinearLayout.LayoutParams.MATCH_PARENT,
+                        LinearLayout.LayoutParams.MATCH_PARENT);
+                params.leftMargin = 20;
+                root.addView(frameLayout[0], params);
+                mActivity.setContentView(root);
+                mAnchor = mActivity.findViewById(R.id.coach_mark_test_layout_anchor);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        mCoachMark = new LayeredCoachMark.LayeredCoachMarkBuilder(mActivity, mAnchor, MESSAGE)
+                .build();
+
+        showCoachMark(getInstrumentation(), mCoachMark);
+
+        final int[] anchorPos = new int[2];
+        final int[] coachMarkPos = new int[2];
+        mAnchor.getLocationOnScreen(anchorPos);
+        mCoachMark.getContentView().getLocationOnScreen(coachMarkPos);
+
+        assertTrue(mCoachMark.isShowing());
+        assertSame(frameLayout[0].getCoachMarkLayer(), mCoachMark.getContentView().getParent());
+        assertEquals(anchorPos[0], coachMarkPos[0]);
+        assertEquals(anchorPos[1], coachMarkPos[1]);
+    }
 }
@@ -2,7 +2,6 @@ package com.swiftkey.cornedbeef;
 
 import android.graphics.Color;
 import android.graphics.Rect;
-import android.graphics.drawable.ColorDrawable;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -25,6 +24,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
 import static androidx.test.espresso.Espresso.onView;
 import static androidx.test.espresso.action.ViewActions.click;
 import static androidx.test.espresso.matcher.RootMatchers.isPlatformPopup;
@@ -122,8 +122,8 @@ public class PunchHoleCoachMarkTestCase {
     @Test
     public void testOverlayCorrectColor() {
         setupCoachmark(false);
-        final View container = mCoachMark.getContentView();
-        int color = ((ColorDrawable) container.getBackground()).getColor();
+        final PunchHoleView container = (PunchHoleView) mCoachMark.getContentView();
+        int color = container.getOverlayColor();
         assertEquals(OVERLAY_COLOR, color);
     }
 
@@ -356,7 +356,7 @@ public class PunchHoleCoachMarkTestCase {
     @Test
     public void testNonTextCoachMark() {
         final ImageView imageView = new ImageView(mActivity);
-        imageView.setImageResource(R.drawable.ic_pointy_mark_up);
+        imageView.setImageResource(R.drawable.sk_logo);
         mCoachMark = new PunchHoleCoachMarkBuilder(mActivity, mAnchor, imageView)
                 .setTargetView(mTargetView)
                 .setHorizontalTranslationDuration(1000)
@@ -375,6 +375,71 @@ public class PunchHoleCoachMarkTestCase {
         assertTrue(content.getChildAt(0) instanceof ImageView);
     }
 
+    /**
+     * Test that retargeting a showing coach mark moves the punch hole to the
+     * new target without showing the coach mark again
+     */
+    @Test
+    public void testRetargetMovesPunchHoleInPlace() {
+        final PunchHoleCoachMark coachMark = (PunchHoleCoachMark) new PunchHoleCoachMarkBuilder(
+                mActivity, mAnchor, mTextView)
+                .setTargetView(mTargetView)
+                .setRetargetDuration(0)
+                .setOnTargetClickListener(mMockTargetClickListener)
+                .setOnGlobalClickListener(mMockCoachMarkClickListener)
+                .build();
+        mCoachMark = coachMark;
+        showCoachMark(getInstrumentation(), mCoachMark);
+        final PunchHoleView container = (PunchHoleView) mCoachMark.getContentView();
+
+        final View newTarget = mActivity.findViewById(R.id.coach_mark_test_target_wide);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                coachMark.retarget(newTarget);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        final Rect anchorCoords = getRectFromPositionOnScreen(mAnchor);
+        final Rect targetCoords = getRectFromPositionOnScreen(newTarget);
+        assertTrue(mCoachMark.isShowing());
+        assertEquals(container, mCoachMark.getContentView());
+        assertEquals(targetCoords.centerX() - anchorCoords.left, container.getHoleCenterX(0));
+        assertEquals(targetCoords.centerY() - anchorCoords.top, container.getHoleCenterY(0));
+
+        onView(is(newTarget)).perform(click());
+        verify(mMockTargetClickListener, times(1)).onClick(container);
+    }
+
+    /**
+     * Test that content which is not sized by the space around the punch hole
+     * is moved clear of the hole without changing the padding of the coach mark
+     */
+    @Test
+    public void testContentMovedWithoutRelayout() {
+        mCoachMark = new PunchHoleCoachMarkBuilder(mActivity, mAnchor, mTextView)
+                .setTargetView(mTargetView)
+                .setContentLayoutParams(MATCH_PARENT, WRAP_CONTENT, POSITION_CONTENT_AUTOMATICALLY)
+                .build();
+        showCoachMark(getInstrumentation(), mCoachMark);
+        final PunchHoleView container = (PunchHoleView) mCoachMark.getContentView();
+        final int paddingTop = container.getPaddingTop();
+        final int paddingBottom = container.getPaddingBottom();
+
+        moveTargetView(getInstrumentation(), mTargetView, 0, 0);
+        checkMessageIsOnTheCorrectSide(container, 1);
+
+        moveTargetView(
+                getInstrumentation(),
+                mTargetView,
+                0,
+                container.getHeight() - mTargetView.getHeight());
+        checkMessageIsOnTheCorrectSide(container, -1);
+        assertEquals(paddingTop, container.getPaddingTop());
+        assertEquals(paddingBottom, container.getPaddingBottom());
+    }
+
     /**
      * Test that the message is shown below when target view located in top side.
      */